@@ -0,0 +1,66 @@
+package com.photowatermark.benchmark;
+
+import com.photowatermark.WatermarkTemplate;
+import com.photowatermark.render.WatermarkSettings;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * 基准测试共用的图片和水印设置
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 按 "宽x高" 创建图片，内容为渐变加噪声，压缩特性接近真实照片
+     */
+    static BufferedImage createImage(String size) {
+        String[] parts = size.split("x");
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(42);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(24);
+                int r = Math.min(255, x * 200 / width + noise);
+                int g = Math.min(255, y * 200 / height + noise);
+                int b = Math.min(255, 128 + noise);
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * 按样式名创建水印设置：plain、rotated、shadow、stroke、all
+     */
+    static WatermarkSettings createSettings(String style) {
+        WatermarkTemplate template = new WatermarkTemplate();
+        template.setWatermarkText("© Photo Watermark 2");
+        template.setFontFamily("Dialog");
+        template.setFontSize(48);
+        template.setTextColor(Color.WHITE);
+        template.setTransparency(30);
+        template.setPosition("右下角");
+
+        boolean all = "all".equals(style);
+        if (all || "rotated".equals(style)) {
+            template.setRotationAngle(30);
+        }
+        if (all || "shadow".equals(style)) {
+            template.setHasShadow(true);
+        }
+        if (all || "stroke".equals(style)) {
+            template.setHasStroke(true);
+        }
+        return WatermarkSettings.from(template);
+    }
+}
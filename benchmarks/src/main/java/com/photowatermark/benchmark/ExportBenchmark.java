@@ -0,0 +1,121 @@
+package com.photowatermark.benchmark;
+
+import com.photowatermark.export.ExportOptions;
+import com.photowatermark.export.ImageExporter;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+import com.photowatermark.util.ImageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编码和导出：ImageUtils.saveImage 以及 exportImageWithWatermark 的JPEG路径
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    @Param({"1920x1080", "6000x4000"})
+    public String size;
+
+    @Param({"plain", "all"})
+    public String style;
+
+    private Path workDir;
+    private BufferedImage image;
+    private File sourceJpeg;
+    private File output;
+    private ImageExporter exporter;
+    private ImageExporter regionExporter;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("watermark-bench");
+        image = BenchmarkFixtures.createImage(size);
+        sourceJpeg = workDir.resolve("source.jpg").toFile();
+        ImageExporter.writeImage(image, sourceJpeg, "JPEG", 0.9f);
+        output = workDir.resolve("output.jpg").toFile();
+
+        WatermarkRenderer renderer = new WatermarkRenderer();
+        WatermarkSettings settings = BenchmarkFixtures.createSettings(style);
+        ExportOptions options = new ExportOptions();
+        options.setFormat("JPEG");
+        exporter = new ImageExporter(renderer, settings, options);
+
+        ExportOptions regionOptions = new ExportOptions();
+        regionOptions.setFormat("JPEG");
+        regionOptions.setJpegRegionReencode(true);
+        regionExporter = new ImageExporter(renderer, settings, regionOptions);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.list(workDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(workDir);
+    }
+
+    @Benchmark
+    public File saveImageJpeg() throws IOException {
+        ImageUtils.saveImage(image, output, "jpg");
+        return output;
+    }
+
+    @Benchmark
+    public File saveImagePng() throws IOException {
+        File png = workDir.resolve("output.png").toFile();
+        ImageUtils.saveImage(image, png, "png");
+        return png;
+    }
+
+    /**
+     * 单张导出：图片已解码，添加水印后完整编码
+     */
+    @Benchmark
+    public File exportJpeg() throws IOException {
+        exporter.export(image, output);
+        return output;
+    }
+
+    /**
+     * 批量导出：从文件解码、原地添加水印、完整编码
+     */
+    @Benchmark
+    public File exportJpegFromFile() throws IOException {
+        exporter.exportFile(sourceJpeg, output);
+        return output;
+    }
+
+    /**
+     * 批量导出：只重新编码水印覆盖的MCU
+     */
+    @Benchmark
+    public File exportJpegRegionReencode() throws IOException {
+        regionExporter.exportFile(sourceJpeg, output);
+        return output;
+    }
+}
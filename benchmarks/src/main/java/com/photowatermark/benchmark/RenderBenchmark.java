@@ -0,0 +1,63 @@
+package com.photowatermark.benchmark;
+
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 添加水印（SwingPhotoWatermarkApp.addWatermark 使用的渲染路径）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({"800x600", "1920x1080", "6000x4000"})
+    public String size;
+
+    @Param({"plain", "rotated", "shadow", "stroke", "all"})
+    public String style;
+
+    private BufferedImage image;
+    private WatermarkSettings settings;
+    private WatermarkRenderer renderer;
+
+    @Setup
+    public void setUp() {
+        image = BenchmarkFixtures.createImage(size);
+        settings = BenchmarkFixtures.createSettings(style);
+        renderer = new WatermarkRenderer();
+    }
+
+    /**
+     * 水印图块已缓存时的稳定状态，对应批量导出和连续预览
+     */
+    @Benchmark
+    public BufferedImage addWatermark() {
+        return renderer.render(image, settings);
+    }
+
+    /**
+     * 每次都重新栅格化水印，对应修改水印设置后的第一次渲染
+     */
+    @Benchmark
+    public BufferedImage addWatermarkUncached() {
+        return new WatermarkRenderer().render(image, settings);
+    }
+}
@@ -0,0 +1,49 @@
+package com.photowatermark.benchmark;
+
+import com.photowatermark.render.ImageScaler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预览缩放（scaleImage）和列表缩略图（generateThumbnail）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScaleBenchmark {
+
+    @Param({"800x600", "1920x1080", "6000x4000"})
+    public String size;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        image = BenchmarkFixtures.createImage(size);
+    }
+
+    @Benchmark
+    public BufferedImage scaleImage() {
+        return ImageScaler.scaleToFit(image, 400, 400);
+    }
+
+    @Benchmark
+    public BufferedImage generateThumbnail() {
+        return ImageScaler.thumbnail(image, 40);
+    }
+}
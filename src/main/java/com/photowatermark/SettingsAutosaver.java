@@ -0,0 +1,85 @@
+package com.photowatermark;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 在后台线程中自动保存最后的设置
+ * 短时间内的连续修改合并为一次写入，内容与上次写入相同时跳过；
+ * 写入通过临时文件加原子替换完成，程序崩溃时磁盘上总有一份完整的设置
+ */
+class SettingsAutosaver {
+
+    // 合并修改的等待时间
+    private static final long DEFAULT_DELAY_MILLIS = 500;
+
+    private final TemplateManager templateManager;
+    private final long delayMillis;
+    private final ScheduledExecutorService executor;
+
+    // 等待写入的最新设置，为 null 时没有已排队的任务
+    private final AtomicReference<WatermarkTemplate> pending = new AtomicReference<>();
+    // 只在写入线程中访问
+    private ObjectNode lastSaved;
+
+    SettingsAutosaver(TemplateManager templateManager) {
+        this(templateManager, DEFAULT_DELAY_MILLIS);
+    }
+
+    SettingsAutosaver(TemplateManager templateManager, long delayMillis) {
+        this.templateManager = templateManager;
+        this.delayMillis = delayMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "settings-autosave");
+            // 不阻止程序退出，退出前由 flush 写完
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交最新的设置，立即返回；调用后不得再修改 settings
+     */
+    void save(WatermarkTemplate settings) {
+        // 之前没有排队的设置时才安排任务，否则由已排队的任务取走最新设置
+        if (pending.getAndSet(settings) == null) {
+            executor.schedule(this::writePending, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即写入尚未保存的设置，最多等待 timeoutMillis，供退出时调用
+     */
+    void flush(long timeoutMillis) {
+        try {
+            Future<?> done = executor.submit(this::writePending);
+            done.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            System.err.println("保存设置失败: " + e);
+        }
+    }
+
+    private void writePending() {
+        WatermarkTemplate settings = pending.getAndSet(null);
+        if (settings == null) {
+            return;
+        }
+        ObjectNode node = TemplateFormat.toJson(settings);
+        if (node.equals(lastSaved)) {
+            return;
+        }
+        if (templateManager.saveLastSettings(settings)) {
+            lastSaved = node;
+        }
+    }
+}
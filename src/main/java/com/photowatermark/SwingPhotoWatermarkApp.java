@@ -9,25 +9,56 @@ import java.awt.datatransfer.Transferable;
 import java.awt.dnd.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.font.FontRenderContext;
-import java.awt.font.TextLayout;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import javax.imageio.ImageIO;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.photowatermark.export.BatchExporter;
+import com.photowatermark.export.DecodedImageCache;
+import com.photowatermark.export.ExportOptions;
+import com.photowatermark.export.ImageCodecs;
+import com.photowatermark.export.ImageExporter;
+import com.photowatermark.export.OutputFiles;
+import com.photowatermark.library.FolderScanner;
+import com.photowatermark.library.ImportIndex;
+import com.photowatermark.render.ImageScaler;
+import com.photowatermark.render.PreviewRenderer;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+import com.photowatermark.render.WatermarkSprite;
+import com.photowatermark.thumbnail.ThumbnailLoader;
+import com.photowatermark.thumbnail.ThumbnailStore;
 
 public class SwingPhotoWatermarkApp extends JFrame {
+    // 列表中缩略图的边长
+    private static final int THUMBNAIL_SIZE = 40;
+    private static final BufferedImage THUMBNAIL_PLACEHOLDER = createThumbnailPlaceholder();
+    // 预览区域的边长
+    private static final int PREVIEW_SIZE = 400;
+    
     private DefaultListModel<String> imageListModel;
     private JList<String> imageList;
-    private JLabel imagePreview;
+    private WatermarkPreviewPanel imagePreview;
     private JTextField watermarkText;
+    // 图片水印
+    private JCheckBox imageWatermarkCheckBox;
+    private JLabel logoFileLabel;
+    private JSpinner logoScaleSpinner;
+    private String logoPath;
     private JSlider transparencySlider;
     private JComboBox<String> positionComboBox;
     private JButton importButton;
+    private JButton cancelImportButton;
     private JButton exportButton;
     private JButton batchExportButton;
     private JButton deleteButton; // 添加删除按钮作为成员变量
@@ -41,11 +72,14 @@ public class SwingPhotoWatermarkApp extends JFrame {
     private Color selectedColor = Color.WHITE;
     private JCheckBox shadowCheckBox;
     private JCheckBox strokeCheckBox;
+    private JCheckBox tiledCheckBox;
+    private JSpinner tileSpacingSpinner;
     
     // 导出选项相关组件
     private JComboBox<String> outputFormatComboBox;
     private JSlider jpegQualitySlider;
     private JLabel qualityLabel;
+    private JCheckBox jpegRegionReencodeCheckBox;
     private JTextField fileNamePatternField;
     private JComboBox<String> fileNamePatternComboBox;
     private JComboBox<String> namingRuleComboBox;
@@ -53,6 +87,8 @@ public class SwingPhotoWatermarkApp extends JFrame {
     private JTextField suffixField;
     private JLabel outputFolderLabel;
     private File selectedOutputFolder;
+    private JSpinner exportThreadsSpinner;
+    private JCheckBox tiledProcessingCheckBox;
     
     // 旋转角度控制组件
     private JSlider rotationSlider;
@@ -62,27 +98,51 @@ public class SwingPhotoWatermarkApp extends JFrame {
     private boolean isDraggingWatermark = false;
     private Point watermarkOffset = new Point(0, 0); // 相对于预设位置的偏移
     private Point lastMousePosition = new Point();
+    // 拖拽开始时的水印偏移及水印层位置，拖拽过程中据此移动缓存的水印层
+    private Point dragStartOffset = new Point();
+    private Point dragStartLayerPosition = new Point();
     private boolean useCustomPosition = false; // 是否使用自定义位置
     private double currentScaleFactor = 1.0; // 当前预览图片的缩放比例
+    private BufferedImage previewBaseImage; // 当前图片缩小到预览尺寸的副本，选中图片时生成
     
     // 模板管理相关组件
     private TemplateManager templateManager;
+    private SettingsAutosaver settingsAutosaver;
+    private final WatermarkRenderer watermarkRenderer = new WatermarkRenderer();
+    // 预览在后台线程渲染，连续修改设置时只显示最新的结果
+    private final PreviewRenderer previewRenderer = new PreviewRenderer(watermarkRenderer, SwingUtilities::invokeLater);
     private JComboBox<String> templateComboBox;
+    // 重建模板列表时不触发模板加载
+    private boolean refreshingTemplates;
     private JButton saveTemplateButton;
     private JButton deleteTemplateButton;
     
     private List<File> imageFiles;
-    private BufferedImage currentImage;
+    private Dimension currentImageSize; // 当前图片的原始尺寸，水印位置按原图计算
     private List<Boolean> imageSelectionStates; // 记录每个图片的选中状态
-    private List<BufferedImage> thumbnailCache; // 缩略图缓存
+    private Map<File, BufferedImage> thumbnailCache; // 缩略图缓存，生成完成前为占位图
+    // 解码后的原图缓存，预览、单张导出和批量导出共用
+    private final DecodedImageCache decodedImageCache = DecodedImageCache.withDefaultBudget();
+    private final ImportIndex importIndex = new ImportIndex(); // 已导入图片的索引，用于重复检查
+    // 后台并行扫描文件夹，找到的图片分批加入列表
+    private final FolderScanner folderScanner = new FolderScanner(path -> isImageFile(path.toFile()));
+    private FolderScanner.Scan currentScan; // 进行中的文件夹扫描
+    // 最多列出的重复文件数，其余只显示数量
+    private static final int MAX_LISTED_DUPLICATES = 20;
+    private final ThumbnailLoader thumbnailLoader = new ThumbnailLoader(THUMBNAIL_SIZE, openThumbnailStore());
     
     public SwingPhotoWatermarkApp() {
         imageFiles = new ArrayList<>();
         imageSelectionStates = new ArrayList<>();
-        thumbnailCache = new ArrayList<>();
+        thumbnailCache = new HashMap<>();
         templateManager = new TemplateManager();
         initializeUI();
+        // 其他进程修改了模板目录时刷新列表
+        templateManager.addChangeListener(() -> SwingUtilities.invokeLater(this::refreshTemplateList));
         loadLastSettings(); // 启动时加载上次的设置
+        // 加载完上次的设置后才开始自动保存，退出时写完尚未保存的设置
+        settingsAutosaver = new SettingsAutosaver(templateManager);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> settingsAutosaver.flush(2000), "settings-flush"));
     }
     
     private void initializeUI() {
@@ -185,8 +245,8 @@ public class SwingPhotoWatermarkApp extends JFrame {
                 leftPanel.add(checkBox);
                 
                 // 缩略图
-                if (index < thumbnailCache.size() && thumbnailCache.get(index) != null) {
-                    BufferedImage thumbnail = thumbnailCache.get(index);
+                BufferedImage thumbnail = index < imageFiles.size() ? thumbnailCache.get(imageFiles.get(index)) : null;
+                if (thumbnail != null) {
                     ImageIcon thumbnailIcon = new ImageIcon(thumbnail);
                     JLabel thumbnailLabel = new JLabel(thumbnailIcon);
                     leftPanel.add(thumbnailLabel);
@@ -214,7 +274,7 @@ public class SwingPhotoWatermarkApp extends JFrame {
         panel.add(scrollPane, BorderLayout.CENTER);
         
         // 添加全选/取消全选按钮和删除按钮
-        JPanel buttonPanel = new JPanel(new GridLayout(3, 1, 5, 5)); // 垂直排列
+        JPanel buttonPanel = new JPanel(new GridLayout(4, 1, 5, 5)); // 垂直排列
         buttonPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5)); // 添加内边距
         
         JButton selectAllButton = new JButton("全选");
@@ -244,6 +304,11 @@ public class SwingPhotoWatermarkApp extends JFrame {
         buttonPanel.add(selectAllButton);
         buttonPanel.add(deselectAllButton);
         buttonPanel.add(deleteButton);
+        
+        // 按内容识别时，不同文件夹中文件名不同的同一张照片也会被跳过
+        JCheckBox contentDedupCheckBox = new JCheckBox("导入时按内容识别重复图片");
+        contentDedupCheckBox.addActionListener(e -> importIndex.setContentHashing(contentDedupCheckBox.isSelected()));
+        buttonPanel.add(contentDedupCheckBox);
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
         return panel;
@@ -253,17 +318,14 @@ public class SwingPhotoWatermarkApp extends JFrame {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(new TitledBorder("图片预览"));
         
-        imagePreview = new JLabel("请选择图片", SwingConstants.CENTER);
-        // 移除固定尺寸限制，让图片可以显示原始大小
-        imagePreview.setHorizontalAlignment(SwingConstants.CENTER);
-        imagePreview.setVerticalAlignment(SwingConstants.CENTER);
+        imagePreview = new WatermarkPreviewPanel("请选择图片");
         imagePreview.setBorder(BorderFactory.createLoweredBevelBorder());
         
         // 添加鼠标监听器以支持水印拖拽
         setupWatermarkDragListeners();
         
         JScrollPane scrollPane = new JScrollPane(imagePreview);
-        scrollPane.setPreferredSize(new Dimension(400, 400)); // 设置滚动面板的首选尺寸
+        scrollPane.setPreferredSize(new Dimension(PREVIEW_SIZE, PREVIEW_SIZE)); // 设置滚动面板的首选尺寸
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         panel.add(scrollPane, BorderLayout.CENTER);
@@ -292,6 +354,36 @@ public class SwingPhotoWatermarkApp extends JFrame {
         
         panel.add(Box.createVerticalStrut(10));
         
+        // 图片水印：透明度和旋转角度与文本水印共用
+        JPanel logoPanel = new JPanel();
+        logoPanel.setLayout(new BoxLayout(logoPanel, BoxLayout.Y_AXIS));
+        logoPanel.setBorder(new TitledBorder("图片水印"));
+        
+        imageWatermarkCheckBox = new JCheckBox("使用图片水印（如Logo）");
+        imageWatermarkCheckBox.addActionListener(e -> updatePreview());
+        logoPanel.add(imageWatermarkCheckBox);
+        
+        JPanel logoFilePanel = new JPanel(new BorderLayout(5, 0));
+        logoFilePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        JButton chooseLogoButton = new JButton("选择图片...");
+        chooseLogoButton.addActionListener(e -> chooseLogoFile());
+        logoFilePanel.add(chooseLogoButton, BorderLayout.WEST);
+        logoFileLabel = new JLabel("未选择");
+        logoFilePanel.add(logoFileLabel, BorderLayout.CENTER);
+        logoPanel.add(logoFilePanel);
+        
+        JPanel logoScalePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        logoScalePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        logoScalePanel.add(new JLabel("缩放 (%):"));
+        logoScaleSpinner = new JSpinner(new SpinnerNumberModel(WatermarkSettings.DEFAULT_LOGO_SCALE, 1, 1000, 5));
+        logoScaleSpinner.addChangeListener(e -> updatePreview());
+        logoScalePanel.add(logoScaleSpinner);
+        logoScalePanel.setMaximumSize(logoScalePanel.getPreferredSize());
+        logoPanel.add(logoScalePanel);
+        panel.add(logoPanel);
+        
+        panel.add(Box.createVerticalStrut(10));
+        
         // 字体设置面板
         JPanel fontPanel = new JPanel();
         fontPanel.setLayout(new BoxLayout(fontPanel, BoxLayout.Y_AXIS));
@@ -390,6 +482,24 @@ public class SwingPhotoWatermarkApp extends JFrame {
         strokeCheckBox.addActionListener(e -> updatePreview());
         effectPanel.add(strokeCheckBox);
         
+        // 平铺：水印交错铺满整张图片，间距为相邻水印之间的像素数
+        tiledCheckBox = new JCheckBox("平铺水印");
+        tiledCheckBox.addActionListener(e -> {
+            tileSpacingSpinner.setEnabled(tiledCheckBox.isSelected());
+            updatePreview();
+        });
+        effectPanel.add(tiledCheckBox);
+        
+        JPanel tileSpacingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        tileSpacingPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        tileSpacingPanel.add(new JLabel("间距:"));
+        tileSpacingSpinner = new JSpinner(new SpinnerNumberModel(WatermarkSettings.DEFAULT_TILE_SPACING, 0, 1000, 10));
+        tileSpacingSpinner.setEnabled(false);
+        tileSpacingSpinner.addChangeListener(e -> updatePreview());
+        tileSpacingPanel.add(tileSpacingSpinner);
+        tileSpacingPanel.setMaximumSize(tileSpacingPanel.getPreferredSize());
+        effectPanel.add(tileSpacingPanel);
+        
         positionStylePanel.add(positionPanel);
         positionStylePanel.add(effectPanel);
         panel.add(positionStylePanel);
@@ -463,6 +573,11 @@ public class SwingPhotoWatermarkApp extends JFrame {
         qualityPanel.add(jpegQualitySlider);
         outputPanel.add(qualityPanel);
         
+        // JPEG局部重编码：原图为JPEG时只重新压缩水印区域
+        jpegRegionReencodeCheckBox = new JCheckBox("JPEG原图仅重编码水印区域");
+        jpegRegionReencodeCheckBox.setToolTipText("保留原图其余部分的压缩数据，避免二次压缩损失（此时不使用JPEG质量设置）");
+        outputPanel.add(jpegRegionReencodeCheckBox);
+        
         panel.add(outputPanel);
         
         // 导出选项
@@ -560,6 +675,23 @@ public class SwingPhotoWatermarkApp extends JFrame {
         folderPanel.add(folderSelectPanel, BorderLayout.CENTER);
         exportOptionsPanel.add(folderPanel);
         
+        exportOptionsPanel.add(Box.createVerticalStrut(5));
+        
+        // 批量导出并行线程数
+        JPanel threadsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        threadsPanel.add(new JLabel("批量导出线程数:"));
+        int defaultThreads = BatchExporter.defaultWorkerCount();
+        exportThreadsSpinner = new JSpinner(new SpinnerNumberModel(defaultThreads, 1, Math.max(64, defaultThreads), 1));
+        threadsPanel.add(exportThreadsSpinner);
+        exportOptionsPanel.add(threadsPanel);
+        
+        // 超大图片分块处理
+        JPanel tiledPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tiledProcessingCheckBox = new JCheckBox("导出时超大图片分块处理");
+        tiledProcessingCheckBox.setToolTipText("逐条读取、添加水印并写出，避免全景图等超大图片占满内存");
+        tiledPanel.add(tiledProcessingCheckBox);
+        exportOptionsPanel.add(tiledPanel);
+        
         panel.add(exportOptionsPanel);
         
         // 模板管理面板
@@ -602,6 +734,12 @@ public class SwingPhotoWatermarkApp extends JFrame {
         importButton.addActionListener(new ImportActionListener());
         panel.add(importButton);
         
+        // 停止导入按钮，仅在扫描文件夹时显示
+        cancelImportButton = new JButton("停止导入");
+        cancelImportButton.setVisible(false);
+        cancelImportButton.addActionListener(e -> cancelFolderImport());
+        panel.add(cancelImportButton);
+        
         // 设置拖拽支持
         setupDragAndDrop();
         
@@ -620,31 +758,24 @@ public class SwingPhotoWatermarkApp extends JFrame {
         return panel;
     }
     
-    // 生成缩略图的方法
-    private BufferedImage generateThumbnail(BufferedImage originalImage) {
-        int thumbnailSize = 40; // 缩略图大小
-        int originalWidth = originalImage.getWidth();
-        int originalHeight = originalImage.getHeight();
-        
-        // 计算缩放比例，保持宽高比
-        double scale = Math.min((double) thumbnailSize / originalWidth, (double) thumbnailSize / originalHeight);
-        int scaledWidth = (int) (originalWidth * scale);
-        int scaledHeight = (int) (originalHeight * scale);
-        
-        // 创建缩略图
-        BufferedImage thumbnail = new BufferedImage(thumbnailSize, thumbnailSize, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = thumbnail.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, thumbnailSize, thumbnailSize);
-        
-        // 居中绘制缩放后的图片
-        int x = (thumbnailSize - scaledWidth) / 2;
-        int y = (thumbnailSize - scaledHeight) / 2;
-        g2d.drawImage(originalImage, x, y, scaledWidth, scaledHeight, null);
+    // 持久化缩略图缓存，无法打开时只在内存中生成
+    private static ThumbnailStore openThumbnailStore() {
+        try {
+            return ThumbnailStore.openDefault(THUMBNAIL_SIZE);
+        } catch (IOException e) {
+            System.err.println("无法打开缩略图缓存: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // 缩略图生成完成前显示的浅灰色方块
+    private static BufferedImage createThumbnailPlaceholder() {
+        BufferedImage placeholder = new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = placeholder.createGraphics();
+        g2d.setColor(new Color(230, 230, 230));
+        g2d.fillRect(0, 0, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
         g2d.dispose();
-        
-        return thumbnail;
+        return placeholder;
     }
     
     // 设置拖拽支持
@@ -679,19 +810,23 @@ public class SwingPhotoWatermarkApp extends JFrame {
                         List<File> droppedFiles = (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
                         
                         List<File> imageFiles = new ArrayList<>();
+                        List<File> folders = new ArrayList<>();
                         for (File file : droppedFiles) {
                             if (file.isDirectory()) {
-                                // 递归添加目录中的图片文件
-                                addImagesFromDirectory(file, imageFiles);
+                                // 目录在后台递归扫描
+                                folders.add(file);
                             } else if (isImageFile(file)) {
                                 imageFiles.add(file);
                             }
                         }
                         
+                        ImportActionListener importListener = new ImportActionListener();
                         if (!imageFiles.isEmpty()) {
-                            ImportActionListener importListener = new ImportActionListener();
                             importListener.addImagesToList(imageFiles.toArray(new File[0]));
                         }
+                        if (!folders.isEmpty()) {
+                            importListener.importFolders(folders, false);
+                        }
                         
                         dtde.dropComplete(true);
                     } else {
@@ -705,18 +840,13 @@ public class SwingPhotoWatermarkApp extends JFrame {
         });
     }
     
-    // 递归添加目录中的图片文件
-    private void addImagesFromDirectory(File directory, List<File> imageFiles) {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    addImagesFromDirectory(file, imageFiles);
-                } else if (isImageFile(file)) {
-                    imageFiles.add(file);
-                }
-            }
+    // 停止进行中的文件夹扫描，已加入列表的图片保留
+    private void cancelFolderImport() {
+        if (currentScan != null) {
+            currentScan.cancel();
+            currentScan = null;
         }
+        cancelImportButton.setVisible(false);
     }
     
     private boolean isImageFile(File file) {
@@ -731,228 +861,73 @@ public class SwingPhotoWatermarkApp extends JFrame {
         if (selectedIndex >= 0 && selectedIndex < imageFiles.size()) {
             try {
                 File selectedFile = imageFiles.get(selectedIndex);
-                currentImage = ImageIO.read(selectedFile);
+                Dimension size = ImageCodecs.readSize(selectedFile);
+                if (size != null && (long) size.width * size.height * 4 > ExportOptions.DEFAULT_TILE_MEMORY_BUDGET) {
+                    // 超大图片只采样解码出预览尺寸，不占用解码缓存，导出时再分条带处理
+                    setCurrentImage(ImageCodecs.readSubsampled(selectedFile, PREVIEW_SIZE), size);
+                } else {
+                    // 与导出共用解码缓存，切换回已看过的图片时不再读盘
+                    BufferedImage image = decodedImageCache.read(selectedFile);
+                    setCurrentImage(image, image == null ? null : new Dimension(image.getWidth(), image.getHeight()));
+                }
                 updatePreview();
                 exportButton.setEnabled(true);
             } catch (IOException e) {
                 JOptionPane.showMessageDialog(this, "无法加载图片: " + e.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
-                currentImage = null;
-                imagePreview.setIcon(null);
-                imagePreview.setText("无法加载图片");
+                setCurrentImage(null, null);
+                imagePreview.showMessage("无法加载图片");
                 exportButton.setEnabled(false);
             }
         } else {
-            currentImage = null;
-            imagePreview.setIcon(null);
-            imagePreview.setText("请选择图片");
+            setCurrentImage(null, null);
+            imagePreview.showMessage("请选择图片");
             exportButton.setEnabled(false);
         }
     }
     
-    private void updatePreview() {
-        if (currentImage != null) {
-            BufferedImage previewImage = addWatermarkForPreview(currentImage);
-            // 强制缩放图片到固定尺寸以适应预览区域
-            BufferedImage scaledImage = scaleImage(previewImage, 400, 400);
-            
-            // 计算缩放比例
-            currentScaleFactor = Math.min(400.0 / previewImage.getWidth(), 400.0 / previewImage.getHeight());
-            if (currentScaleFactor > 1.0) {
-                currentScaleFactor = 1.0; // 如果图片小于预览区域，不放大
-            }
-            
-            imagePreview.setIcon(new ImageIcon(scaledImage));
-            imagePreview.setText("");
-            
-            // 设置固定的首选尺寸
-            imagePreview.setPreferredSize(new Dimension(400, 400));
-            imagePreview.revalidate(); // 重新验证布局
+    // 切换当前图片，同时生成预览用的缩小副本；image 可以是采样解码的图片，size 为原图尺寸
+    private void setCurrentImage(BufferedImage image, Dimension size) {
+        if (image == null) {
+            currentImageSize = null;
+            previewBaseImage = null;
+            // 丢弃尚未显示的旧图片预览
+            previewRenderer.cancel();
+            return;
+        }
+        
+        // 强制缩放图片到固定尺寸以适应预览区域
+        currentImageSize = size;
+        previewBaseImage = scaleImage(image, PREVIEW_SIZE, PREVIEW_SIZE);
+        
+        // 按原图尺寸计算缩放比例
+        currentScaleFactor = Math.min((double) PREVIEW_SIZE / size.width, (double) PREVIEW_SIZE / size.height);
+        if (currentScaleFactor > 1.0) {
+            currentScaleFactor = 1.0; // 如果图片小于预览区域，不放大
         }
     }
     
-    private BufferedImage addWatermarkForPreview(BufferedImage originalImage) {
-        // 创建图片副本用于预览
-        BufferedImage watermarkedImage = new BufferedImage(
-            originalImage.getWidth(), 
-            originalImage.getHeight(), 
-            BufferedImage.TYPE_INT_RGB
-        );
-        
-        Graphics2D g2d = watermarkedImage.createGraphics();
-        g2d.drawImage(originalImage, 0, 0, null);
-        
-        // 设置抗锯齿
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        
-        String text = watermarkText.getText();
-        if (text != null && !text.trim().isEmpty()) {
-            // 获取字体设置
-            String fontFamily = (String) fontFamilyComboBox.getSelectedItem();
-            int fontSize = (Integer) fontSizeSpinner.getValue();
-            int fontStyle = Font.PLAIN;
-            if (boldCheckBox.isSelected()) fontStyle |= Font.BOLD;
-            if (italicCheckBox.isSelected()) fontStyle |= Font.ITALIC;
-            
-            Font font = new Font(fontFamily, fontStyle, fontSize);
-            g2d.setFont(font);
-            
-            // 计算文本位置
-            FontRenderContext frc = g2d.getFontRenderContext();
-            TextLayout textLayout = new TextLayout(text, font, frc);
-            Rectangle2D textBounds = textLayout.getBounds();
-            
-            int imageWidth = originalImage.getWidth();
-            int imageHeight = originalImage.getHeight();
-            int textWidth = (int) textBounds.getWidth();
-            int textHeight = (int) textBounds.getHeight();
-            
-            int x, y;
-            String position = (String) positionComboBox.getSelectedItem();
-            
-            // 如果使用自定义位置（拖拽后），则使用偏移位置
-            if (useCustomPosition) {
-                // 计算基础位置
-                Point basePos = getBaseWatermarkPositionForImage(imageWidth, imageHeight, textWidth, textHeight, position);
-                x = basePos.x + watermarkOffset.x;
-                y = basePos.y + watermarkOffset.y;
-            } else {
-                // 使用预设位置
-                switch (position) {
-                    case "左上角":
-                        x = 10;
-                        y = textHeight + 10;
-                        break;
-                    case "上中":
-                        x = (imageWidth - textWidth) / 2;
-                        y = textHeight + 10;
-                        break;
-                    case "右上角":
-                        x = imageWidth - textWidth - 10;
-                        y = textHeight + 10;
-                        break;
-                    case "左中":
-                        x = 10;
-                        y = (imageHeight + textHeight) / 2;
-                        break;
-                    case "中心":
-                        x = (imageWidth - textWidth) / 2;
-                        y = (imageHeight + textHeight) / 2;
-                        break;
-                    case "右中":
-                        x = imageWidth - textWidth - 10;
-                        y = (imageHeight + textHeight) / 2;
-                        break;
-                    case "左下角":
-                        x = 10;
-                        y = imageHeight - 10;
-                        break;
-                    case "下中":
-                        x = (imageWidth - textWidth) / 2;
-                        y = imageHeight - 10;
-                        break;
-                    case "右下角":
-                    default:
-                        x = imageWidth - textWidth - 10;
-                        y = imageHeight - 10;
-                        break;
-                }
-            }
-            
-            // 设置透明度
-            float alpha = 1.0f - (transparencySlider.getValue() / 100.0f);
-            
-            // 获取旋转角度
-            int rotationAngle = rotationSlider.getValue();
-            
-            // 如果有旋转角度，应用旋转变换
-            if (rotationAngle != 0) {
-                // 保存当前的变换状态
-                AffineTransform originalTransform = g2d.getTransform();
-                
-                // 计算旋转中心点（文本的中心）
-                double centerX = x + textWidth / 2.0;
-                double centerY = y - textHeight / 2.0;
-                
-                // 应用旋转变换
-                g2d.rotate(Math.toRadians(rotationAngle), centerX, centerY);
-                
-                // 绘制阴影效果
-                if (shadowCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha * 0.5f));
-                    g2d.drawString(text, x + 2, y + 2);
-                }
-                
-                // 绘制描边效果
-                if (strokeCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha));
-                    g2d.setStroke(new BasicStroke(2));
-                    
-                    // 创建文本轮廓
-                    AffineTransform textTransform = AffineTransform.getTranslateInstance(x, y);
-                    Shape textShape = textLayout.getOutline(textTransform);
-                    g2d.draw(textShape);
-                }
-                
-                // 绘制主文本
-                g2d.setColor(new Color(selectedColor.getRed(), selectedColor.getGreen(), selectedColor.getBlue(), (int)(alpha * 255)));
-                g2d.drawString(text, x, y);
-                
-                // 恢复原始变换状态
-                g2d.setTransform(originalTransform);
-            } else {
-                // 没有旋转时的原始绘制逻辑
-                // 绘制阴影效果
-                if (shadowCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha * 0.5f));
-                    g2d.drawString(text, x + 2, y + 2);
-                }
-                
-                // 绘制描边效果
-                if (strokeCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha));
-                    g2d.setStroke(new BasicStroke(2));
-                    
-                    // 创建文本轮廓
-                    AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
-                    Shape textShape = textLayout.getOutline(transform);
-                    g2d.draw(textShape);
-                }
-                
-                // 绘制主文本
-                g2d.setColor(new Color(selectedColor.getRed(), selectedColor.getGreen(), selectedColor.getBlue(), (int)(alpha * 255)));
-                g2d.drawString(text, x, y);
-            }
+    private void updatePreview() {
+        // 设置的每次修改都会走到这里，顺便安排自动保存
+        saveLastSettings();
+        if (currentImageSize != null) {
+            // 在缩小的副本上绘制按同样比例缩放的水印，不处理原图
+            // 渲染在后台进行，事件线程只提交当前设置的快照
+            previewRenderer.request(previewBaseImage, currentImageSize.width, currentImageSize.height,
+                getCurrentSettings(), currentScaleFactor, this::showPreviewFrame);
         }
+    }
+    
+    // 显示后台渲染完成的预览，在事件线程中调用
+    private void showPreviewFrame(BufferedImage scaledImage) {
+        imagePreview.showFrame(scaledImage);
         
-        g2d.dispose();
-        return watermarkedImage;
+        // 设置固定的首选尺寸
+        imagePreview.setPreferredSize(new Dimension(PREVIEW_SIZE, PREVIEW_SIZE));
+        imagePreview.revalidate(); // 重新验证布局
     }
     
     private BufferedImage scaleImage(BufferedImage original, int maxWidth, int maxHeight) {
-        int originalWidth = original.getWidth();
-        int originalHeight = original.getHeight();
-        
-        // 计算缩放比例
-        double scaleX = (double) maxWidth / originalWidth;
-        double scaleY = (double) maxHeight / originalHeight;
-        double scale = Math.min(scaleX, scaleY);
-        
-        // 如果图片已经小于最大尺寸，不需要缩放
-        if (scale >= 1.0) {
-            return original;
-        }
-        
-        int scaledWidth = (int) (originalWidth * scale);
-        int scaledHeight = (int) (originalHeight * scale);
-        
-        BufferedImage scaledImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = scaledImage.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(original, 0, 0, scaledWidth, scaledHeight, null);
-        g2d.dispose();
-        
-        return scaledImage;
+        return ImageScaler.scaleToFit(original, maxWidth, maxHeight);
     }
     
     private class ImportActionListener implements ActionListener {
@@ -995,67 +970,124 @@ public class SwingPhotoWatermarkApp extends JFrame {
         }
         
         private void importImagesFromFolder(File folder) {
-            List<File> imageFilesList = new ArrayList<>();
-            addImagesFromDirectory(folder, imageFilesList);
+            importFolders(Collections.singletonList(folder), true);
+        }
+        
+        // 在后台递归扫描文件夹，找到的图片分批加入列表；新的扫描会停止之前未完成的扫描
+        private void importFolders(List<File> folders, boolean reportResult) {
+            cancelFolderImport();
             
-            if (imageFilesList.isEmpty()) {
-                JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
-                    "在选择的文件夹中没有找到支持的图片文件", "提示", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                addImagesToList(imageFilesList.toArray(new File[0]));
-                JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
-                    "成功导入 " + imageFilesList.size() + " 张图片", "导入成功", JOptionPane.INFORMATION_MESSAGE);
+            List<java.nio.file.Path> directories = new ArrayList<>();
+            for (File folder : folders) {
+                directories.add(folder.toPath());
             }
+            
+            // 以下状态只在事件线程中访问
+            List<String> duplicateFiles = new ArrayList<>();
+            int[] importedCount = {0};
+            FolderScanner.Scan[] scanHolder = new FolderScanner.Scan[1];
+            FolderScanner.Scan scan = folderScanner.scan(directories, batch -> {
+                // 文件大小和摘要在扫描线程中读取，事件线程只查询索引
+                List<ImportIndex.Candidate> candidates = prepareImages(batch);
+                SwingUtilities.invokeLater(() -> {
+                    if (currentScan == scanHolder[0]) {
+                        importedCount[0] += appendImages(candidates, duplicateFiles);
+                    } else {
+                        candidates.forEach(importIndex::discard);
+                    }
+                });
+            });
+            scanHolder[0] = scan;
+            currentScan = scan;
+            cancelImportButton.setVisible(true);
+            
+            scan.completion().whenCompleteAsync((foundCount, error) -> {
+                if (currentScan != scan) {
+                    // 已被取消或被新的扫描取代
+                    return;
+                }
+                currentScan = null;
+                cancelImportButton.setVisible(false);
+                
+                showDuplicateFiles(duplicateFiles);
+                if (!reportResult) {
+                    return;
+                }
+                if (error != null) {
+                    JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
+                        "扫描文件夹失败: " + error.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                } else if (foundCount == 0) {
+                    JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
+                        "在选择的文件夹中没有找到支持的图片文件", "提示", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
+                        "成功导入 " + importedCount[0] + " 张图片", "导入成功", JOptionPane.INFORMATION_MESSAGE);
+                }
+            }, SwingUtilities::invokeLater);
         }
         
         private void addImagesToList(File[] files) {
-            List<String> duplicateFiles = new ArrayList<>();
-            List<File> newFiles = new ArrayList<>();
-            
+            // 读取文件大小和摘要可能较慢，在后台线程中完成后再加入列表
+            new SwingWorker<List<ImportIndex.Candidate>, Void>() {
+                @Override
+                protected List<ImportIndex.Candidate> doInBackground() {
+                    return prepareImages(Arrays.asList(files));
+                }
+                
+                @Override
+                protected void done() {
+                    List<ImportIndex.Candidate> candidates;
+                    try {
+                        candidates = get();
+                    } catch (Exception ex) {
+                        JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, "导入图片失败: " + ex.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    List<String> duplicateFiles = new ArrayList<>();
+                    appendImages(candidates, duplicateFiles);
+                    showDuplicateFiles(duplicateFiles);
+                }
+            }.execute();
+        }
+        
+        // 为重复检查准备图片文件，在后台线程中调用
+        private List<ImportIndex.Candidate> prepareImages(List<File> files) {
+            List<ImportIndex.Candidate> candidates = new ArrayList<>(files.size());
             for (File file : files) {
                 if (isImageFile(file)) {
-                    // 检查是否已存在同名同后缀的文件
-                    boolean isDuplicate = false;
-                    for (File existingFile : imageFiles) {
-                        if (existingFile.getName().equals(file.getName())) {
-                            duplicateFiles.add(file.getName());
-                            isDuplicate = true;
-                            break;
-                        }
-                    }
-                    
-                    if (!isDuplicate) {
-                        newFiles.add(file);
-                    }
+                    candidates.add(importIndex.prepare(file));
                 }
             }
+            return candidates;
+        }
+        
+        // 将新图片加入列表，跳过的重复文件记录到 duplicateFiles，返回实际加入的数量
+        private int appendImages(List<ImportIndex.Candidate> candidates, List<String> duplicateFiles) {
+            List<File> newFiles = new ArrayList<>();
             
-            // 如果有重复文件，显示提示
-            if (!duplicateFiles.isEmpty()) {
-                StringBuilder message = new StringBuilder("以下文件已存在，将跳过导入：\n");
-                for (String fileName : duplicateFiles) {
-                    message.append("• ").append(fileName).append("\n");
+            for (ImportIndex.Candidate candidate : candidates) {
+                File file = candidate.getFile();
+                // 通过索引检查是否已存在同名同后缀（或内容相同）的文件，本次导入的文件也会立即加入索引
+                File existingFile = importIndex.findDuplicate(candidate);
+                if (existingFile != null) {
+                    duplicateFiles.add(existingFile.getName().equals(file.getName())
+                        ? file.getName()
+                        : file.getName() + "（与 " + existingFile.getName() + " 内容相同）");
+                } else {
+                    importIndex.add(candidate);
+                    newFiles.add(file);
                 }
-                JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
-                    message.toString(), "重复文件提示", JOptionPane.WARNING_MESSAGE);
             }
             
-            // 添加新文件
+            // 添加新文件，列表模型一次性加入整批名称，只触发一次更新
+            List<String> newNames = new ArrayList<>(newFiles.size());
             for (File file : newFiles) {
                 imageFiles.add(file);
-                imageListModel.addElement(file.getName());
                 imageSelectionStates.add(false); // 默认不选中
-                
-                // 生成并缓存缩略图
-                try {
-                    BufferedImage originalImage = ImageIO.read(file);
-                    BufferedImage thumbnail = generateThumbnail(originalImage);
-                    thumbnailCache.add(thumbnail);
-                } catch (IOException e) {
-                    // 如果无法生成缩略图，添加null占位
-                    thumbnailCache.add(null);
-                }
+                newNames.add(file.getName());
+                loadThumbnail(file);
             }
+            imageListModel.addAll(newNames);
             
             // 如果之前没有选中任何图片，自动选中第一张
             if (imageList.getSelectedIndex() == -1 && !imageFiles.isEmpty()) {
@@ -1064,6 +1096,47 @@ public class SwingPhotoWatermarkApp extends JFrame {
             
             updateBatchExportButton();
             updateDeleteButton();
+            return newFiles.size();
+        }
+        
+        // 如果有重复文件，显示提示
+        private void showDuplicateFiles(List<String> duplicateFiles) {
+            if (!duplicateFiles.isEmpty()) {
+                StringBuilder message = new StringBuilder("以下文件已存在，将跳过导入：\n");
+                for (String fileName : duplicateFiles.subList(0, Math.min(duplicateFiles.size(), MAX_LISTED_DUPLICATES))) {
+                    message.append("• ").append(fileName).append("\n");
+                }
+                if (duplicateFiles.size() > MAX_LISTED_DUPLICATES) {
+                    message.append("等共 ").append(duplicateFiles.size()).append(" 个文件\n");
+                }
+                JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
+                    message.toString(), "重复文件提示", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+        
+        private void loadThumbnail(File file) {
+            CompletableFuture<BufferedImage> thumbnailFuture = thumbnailLoader.load(file);
+            if (thumbnailFuture.isDone() && !thumbnailFuture.isCompletedExceptionally()) {
+                // 持久化缓存命中，直接显示
+                thumbnailCache.put(file, thumbnailFuture.join());
+                return;
+            }
+            
+            // 先显示占位图，缩略图在后台生成后再替换
+            thumbnailCache.put(file, THUMBNAIL_PLACEHOLDER);
+            thumbnailFuture.whenCompleteAsync((thumbnail, error) -> {
+                // 生成期间图片可能已被删除
+                if (thumbnailCache.get(file) != THUMBNAIL_PLACEHOLDER) {
+                    return;
+                }
+                if (error != null) {
+                    // 无法生成缩略图时不显示
+                    thumbnailCache.remove(file);
+                } else {
+                    thumbnailCache.put(file, thumbnail);
+                }
+                imageList.repaint();
+            }, SwingUtilities::invokeLater);
         }
     }
     
@@ -1113,15 +1186,16 @@ public class SwingPhotoWatermarkApp extends JFrame {
             // 从后往前删除，避免索引变化
             for (int i = selectedIndices.size() - 1; i >= 0; i--) {
                 int index = selectedIndices.get(i);
-                imageFiles.remove(index);
+                File removedFile = imageFiles.remove(index);
+                importIndex.remove(removedFile);
                 imageSelectionStates.remove(index);
-                thumbnailCache.remove(index);
+                thumbnailCache.remove(removedFile);
                 imageListModel.remove(index);
             }
             
             // 更新预览
             if (imageFiles.isEmpty()) {
-                currentImage = null;
+                setCurrentImage(null, null);
                 updatePreview();
             } else {
                 // 如果当前选中的图片被删除了，选择第一张图片
@@ -1148,7 +1222,7 @@ public class SwingPhotoWatermarkApp extends JFrame {
                 }
                 
                 // 单张图片导出
-                if (currentImage == null) {
+                if (currentImageSize == null) {
                     JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, "请先选择一张图片", "提示", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
@@ -1196,7 +1270,7 @@ public class SwingPhotoWatermarkApp extends JFrame {
                     // YES_OPTION 继续覆盖
                 }
                 
-                exportImageWithWatermark(currentImage, outputFile, selectedFormat);
+                exportImageWithWatermark(currentImageFile, outputFile, selectedFormat);
                 JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, 
                     "图片导出成功!\n保存位置: " + outputFile.getAbsolutePath(), 
                     "成功", 
@@ -1229,73 +1303,60 @@ public class SwingPhotoWatermarkApp extends JFrame {
                 return;
             }
             
-            // 批量导出
-            int successCount = 0;
-            int failCount = 0;
-            StringBuilder errorMessages = new StringBuilder();
-            
+            // 按顺序预先确定输出文件名，保证并行导出时命名稳定且不会互相覆盖
+            List<BatchExporter.Job> jobs = new ArrayList<>();
+            Set<File> reservedFiles = new HashSet<>();
             for (int i = 0; i < selectedIndices.size(); i++) {
-                int imageIndex = selectedIndices.get(i);
-                File imageFile = imageFiles.get(imageIndex);
+                File imageFile = imageFiles.get(selectedIndices.get(i));
+                String outputFileName = generateOutputFileName(imageFile, i + 1, selectedFormat);
+                File outputFile = generateUniqueFileName(new File(selectedOutputFolder, outputFileName), reservedFiles);
+                reservedFiles.add(outputFile);
+                jobs.add(new BatchExporter.Job(imageFile, outputFile));
+            }
+            
+            BatchExporter batchExporter = new BatchExporter(createImageExporter(selectedFormat),
+                (Integer) exportThreadsSpinner.getValue());
+            batchExportButton.setEnabled(false);
+            
+            // 在后台线程中并行导出，避免阻塞界面
+            new SwingWorker<BatchExporter.Result, Void>() {
+                @Override
+                protected BatchExporter.Result doInBackground() throws Exception {
+                    return batchExporter.export(jobs);
+                }
                 
-                try {
-                    BufferedImage image = ImageIO.read(imageFile);
-                    String outputFileName = generateOutputFileName(imageFile, i + 1, selectedFormat);
-                    File outputFile = new File(selectedOutputFolder, outputFileName);
+                @Override
+                protected void done() {
+                    updateBatchExportButton();
+                    BatchExporter.Result result;
+                    try {
+                        result = get();
+                    } catch (Exception ex) {
+                        JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, "批量导出失败: " + ex.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
                     
-                    // 使用防覆盖机制生成唯一文件名
-                    outputFile = generateUniqueFileName(outputFile);
+                    // 显示结果
+                    int failCount = result.getFailCount();
+                    String message = "批量导出完成!\n成功: " + result.getSuccessCount() + " 张\n失败: " + failCount + " 张";
+                    if (failCount > 0) {
+                        message += "\n\n错误详情:\n" + String.join("\n", result.getErrorMessages());
+                    }
                     
-                    exportImageWithWatermark(image, outputFile, selectedFormat);
-                    successCount++;
-                } catch (IOException ex) {
-                    failCount++;
-                    errorMessages.append("文件 ").append(imageFile.getName()).append(": ").append(ex.getMessage()).append("\n");
+                    JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, message, 
+                        failCount > 0 ? "部分成功" : "全部成功", 
+                        failCount > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
                 }
-            }
-            
-            // 显示结果
-            String message = "批量导出完成!\n成功: " + successCount + " 张\n失败: " + failCount + " 张";
-            if (failCount > 0) {
-                message += "\n\n错误详情:\n" + errorMessages.toString();
-            }
-            
-            JOptionPane.showMessageDialog(SwingPhotoWatermarkApp.this, message, 
-                failCount > 0 ? "部分成功" : "全部成功", 
-                failCount > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+            }.execute();
         }
         
         private File generateUniqueFileName(File originalFile) {
-            if (!originalFile.exists()) {
-                return originalFile;
-            }
-            
-            String originalPath = originalFile.getAbsolutePath();
-            String directory = originalFile.getParent();
-            String fileName = originalFile.getName();
-            
-            // 分离文件名和扩展名
-            String nameWithoutExt;
-            String extension;
-            int lastDotIndex = fileName.lastIndexOf('.');
-            if (lastDotIndex > 0) {
-                nameWithoutExt = fileName.substring(0, lastDotIndex);
-                extension = fileName.substring(lastDotIndex);
-            } else {
-                nameWithoutExt = fileName;
-                extension = "";
-            }
-            
-            // 尝试添加数字后缀
-            int counter = 1;
-            File newFile;
-            do {
-                String newFileName = nameWithoutExt + "_" + counter + extension;
-                newFile = new File(directory, newFileName);
-                counter++;
-            } while (newFile.exists());
-            
-            return newFile;
+            return generateUniqueFileName(originalFile, Collections.emptySet());
+        }
+        
+        // reservedFiles 为本次批量导出中已分配但尚未写出的文件
+        private File generateUniqueFileName(File originalFile, Set<File> reservedFiles) {
+            return OutputFiles.uniqueFile(originalFile, reservedFiles);
         }
         
         private File generateUniqueFileNameWithOriginalFormat(File outputFile, File originalFile) {
@@ -1379,192 +1440,36 @@ public class SwingPhotoWatermarkApp extends JFrame {
             return newName + "." + format.toLowerCase();
         }
         
-        private void exportImageWithWatermark(BufferedImage image, File outputFile, String format) throws IOException {
-            BufferedImage watermarkedImage = addWatermark(image);
-            
-            if ("JPEG".equalsIgnoreCase(format)) {
-                // JPEG格式，使用质量设置
-                javax.imageio.ImageWriter writer = ImageIO.getImageWritersByFormatName("JPEG").next();
-                javax.imageio.ImageWriteParam param = writer.getDefaultWriteParam();
-                param.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-                param.setCompressionQuality(jpegQualitySlider.getValue() / 100.0f);
-                
-                try (java.io.FileOutputStream fos = new java.io.FileOutputStream(outputFile);
-                     javax.imageio.stream.ImageOutputStream ios = ImageIO.createImageOutputStream(fos)) {
-                    writer.setOutput(ios);
-                    writer.write(null, new javax.imageio.IIOImage(watermarkedImage, null, null), param);
-                }
-                writer.dispose();
-            } else {
-                // PNG或其他格式
-                ImageIO.write(watermarkedImage, format, outputFile);
+        // 与批量导出走同样的路径：JPEG局部重编码、超大图片分条带，其余从解码缓存取原图
+        private void exportImageWithWatermark(File sourceFile, File outputFile, String format) throws IOException {
+            try {
+                createImageExporter(format).exportFile(sourceFile, outputFile);
+            } catch (UncheckedIOException e) {
+                // 水印图片读取失败
+                throw e.getCause();
             }
         }
+        
+        private ImageExporter createImageExporter(String format) {
+            ExportOptions options = new ExportOptions();
+            options.setFormat(format);
+            options.setJpegQuality(jpegQualitySlider.getValue() / 100.0f);
+            options.setJpegRegionReencode(jpegRegionReencodeCheckBox.isSelected());
+            options.setTiledProcessing(tiledProcessingCheckBox.isSelected());
+            return new ImageExporter(watermarkRenderer, getCurrentSettings(), options, decodedImageCache);
+        }
     }
     
-    private BufferedImage addWatermark(BufferedImage originalImage) {
-        // 创建图片副本
-        BufferedImage watermarkedImage = new BufferedImage(
-            originalImage.getWidth(), 
-            originalImage.getHeight(), 
-            BufferedImage.TYPE_INT_RGB
-        );
-        
-        Graphics2D g2d = watermarkedImage.createGraphics();
-        g2d.drawImage(originalImage, 0, 0, null);
-        
-        // 设置抗锯齿
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        
-        String text = watermarkText.getText();
-        if (text != null && !text.trim().isEmpty()) {
-            // 获取字体设置
-            String fontFamily = (String) fontFamilyComboBox.getSelectedItem();
-            int fontSize = (Integer) fontSizeSpinner.getValue();
-            int fontStyle = Font.PLAIN;
-            if (boldCheckBox.isSelected()) fontStyle |= Font.BOLD;
-            if (italicCheckBox.isSelected()) fontStyle |= Font.ITALIC;
-            
-            Font font = new Font(fontFamily, fontStyle, fontSize);
-            g2d.setFont(font);
-            
-            // 计算文本位置
-            FontRenderContext frc = g2d.getFontRenderContext();
-            TextLayout textLayout = new TextLayout(text, font, frc);
-            Rectangle2D textBounds = textLayout.getBounds();
-            
-            int imageWidth = originalImage.getWidth();
-            int imageHeight = originalImage.getHeight();
-            int textWidth = (int) textBounds.getWidth();
-            int textHeight = (int) textBounds.getHeight();
-            
-            int x, y;
-            String position = (String) positionComboBox.getSelectedItem();
-            
-            // 如果使用自定义位置（拖拽后），则使用偏移位置
-            if (useCustomPosition) {
-                // 计算基础位置
-                Point basePos = getBaseWatermarkPositionForImage(imageWidth, imageHeight, textWidth, textHeight, position);
-                x = basePos.x + watermarkOffset.x;
-                y = basePos.y + watermarkOffset.y;
-            } else {
-                // 使用预设位置
-                switch (position) {
-                    case "左上角":
-                        x = 10;
-                        y = textHeight + 10;
-                        break;
-                    case "上中":
-                        x = (imageWidth - textWidth) / 2;
-                        y = textHeight + 10;
-                        break;
-                    case "右上角":
-                        x = imageWidth - textWidth - 10;
-                        y = textHeight + 10;
-                        break;
-                    case "左中":
-                        x = 10;
-                        y = (imageHeight + textHeight) / 2;
-                        break;
-                    case "中心":
-                        x = (imageWidth - textWidth) / 2;
-                        y = (imageHeight + textHeight) / 2;
-                        break;
-                    case "右中":
-                        x = imageWidth - textWidth - 10;
-                        y = (imageHeight + textHeight) / 2;
-                        break;
-                    case "左下角":
-                        x = 10;
-                        y = imageHeight - 10;
-                        break;
-                    case "下中":
-                        x = (imageWidth - textWidth) / 2;
-                        y = imageHeight - 10;
-                        break;
-                    case "右下角":
-                    default:
-                        x = imageWidth - textWidth - 10;
-                        y = imageHeight - 10;
-                        break;
-                }
-            }
-            
-            // 设置透明度
-            float alpha = 1.0f - (transparencySlider.getValue() / 100.0f);
-            
-            // 获取旋转角度
-            int rotationAngle = rotationSlider.getValue();
-            
-            // 如果有旋转角度，应用旋转变换
-            if (rotationAngle != 0) {
-                // 保存当前的变换状态
-                AffineTransform originalTransform = g2d.getTransform();
-                
-                // 计算旋转中心点（文本的中心）
-                double centerX = x + textWidth / 2.0;
-                double centerY = y - textHeight / 2.0;
-                
-                // 应用旋转变换
-                g2d.rotate(Math.toRadians(rotationAngle), centerX, centerY);
-                
-                // 绘制阴影效果
-                if (shadowCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha * 0.5f));
-                    g2d.drawString(text, x + 2, y + 2);
-                }
-                
-                // 绘制描边效果
-                if (strokeCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha));
-                    g2d.setStroke(new BasicStroke(2));
-                    
-                    // 创建文本轮廓
-                    AffineTransform textTransform = AffineTransform.getTranslateInstance(x, y);
-                    Shape textShape = textLayout.getOutline(textTransform);
-                    g2d.draw(textShape);
-                }
-                
-                // 绘制主文本
-                g2d.setColor(new Color(selectedColor.getRed(), selectedColor.getGreen(), selectedColor.getBlue(), (int)(alpha * 255)));
-                g2d.drawString(text, x, y);
-                
-                // 恢复原始变换状态
-                g2d.setTransform(originalTransform);
-            } else {
-                // 没有旋转时的原始绘制逻辑
-                // 绘制阴影效果
-                if (shadowCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha * 0.5f));
-                    g2d.drawString(text, x + 2, y + 2);
-                }
-                
-                // 绘制描边效果
-                if (strokeCheckBox.isSelected()) {
-                    g2d.setColor(new Color(0, 0, 0, alpha));
-                    g2d.setStroke(new BasicStroke(2));
-                    
-                    // 创建文本轮廓
-                    AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
-                    Shape textShape = textLayout.getOutline(transform);
-                    g2d.draw(textShape);
-                }
-                
-                // 绘制主文本
-                g2d.setColor(new Color(selectedColor.getRed(), selectedColor.getGreen(), selectedColor.getBlue(), (int)(alpha * 255)));
-                g2d.drawString(text, x, y);
-            }
-        }
-        
-        g2d.dispose();
-        return watermarkedImage;
+    // 获取当前界面设置的不可变快照，供渲染器使用
+    private WatermarkSettings getCurrentSettings() {
+        return WatermarkSettings.from(getCurrentTemplate());
     }
     
     private void updateQualitySliderVisibility() {
         boolean isJPEG = "JPEG".equals(outputFormatComboBox.getSelectedItem());
         qualityLabel.setVisible(isJPEG);
         jpegQualitySlider.setVisible(isJPEG);
+        jpegRegionReencodeCheckBox.setVisible(isJPEG);
     }
     
     private void selectOutputFolder() {
@@ -1583,18 +1488,16 @@ public class SwingPhotoWatermarkApp extends JFrame {
         imagePreview.addMouseListener(new java.awt.event.MouseAdapter() {
             @Override
             public void mousePressed(java.awt.event.MouseEvent e) {
-                if (currentImage != null && !watermarkText.getText().trim().isEmpty()) {
+                if (currentImageSize != null && hasWatermark()) {
                     // 检查是否点击在水印区域
-                    Point watermarkPos = calculateWatermarkPosition();
-                    if (watermarkPos != null) {
-                        Rectangle watermarkBounds = getWatermarkBounds(watermarkPos);
-                        if (watermarkBounds.contains(e.getPoint())) {
-                            isDraggingWatermark = true;
-                            lastMousePosition = e.getPoint();
-                            imagePreview.setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
-                            // 添加视觉反馈 - 稍微降低透明度表示正在拖拽
-                            imagePreview.setToolTipText("拖拽水印到新位置");
-                        }
+                    Rectangle watermarkBounds = getPreviewWatermarkBounds();
+                    if (watermarkBounds != null && watermarkBounds.contains(e.getPoint())) {
+                        isDraggingWatermark = true;
+                        lastMousePosition = e.getPoint();
+                        startWatermarkLayerDrag();
+                        imagePreview.setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+                        // 添加视觉反馈 - 稍微降低透明度表示正在拖拽
+                        imagePreview.setToolTipText("拖拽水印到新位置");
                     }
                 }
             }
@@ -1604,15 +1507,16 @@ public class SwingPhotoWatermarkApp extends JFrame {
                 if (isDraggingWatermark) {
                     isDraggingWatermark = false;
                     imagePreview.setCursor(Cursor.getDefaultCursor());
-                    useCustomPosition = true;
                     imagePreview.setToolTipText(null); // 清除提示
+                    // 松开鼠标后才完整渲染一次，渲染完成前继续显示分层画面
+                    imagePreview.stopLayerDrag();
                     updatePreview();
                 }
             }
             
             @Override
             public void mouseEntered(java.awt.event.MouseEvent e) {
-                if (currentImage != null && !watermarkText.getText().trim().isEmpty()) {
+                if (currentImageSize != null && hasWatermark()) {
                     imagePreview.setToolTipText("点击并拖拽水印可调整位置");
                 }
             }
@@ -1638,17 +1542,23 @@ public class SwingPhotoWatermarkApp extends JFrame {
                     watermarkOffset.y += (int)(deltaY / currentScaleFactor);
                     
                     lastMousePosition = e.getPoint();
-                    // 实时更新预览，提供流畅的拖拽体验
-                    updatePreview();
+                    if (tiledCheckBox.isSelected()) {
+                        // 平铺时整个网格随之移动，交给后台重新渲染
+                        updatePreview();
+                        return;
+                    }
+                    // 只移动缓存的水印层，不重新渲染
+                    imagePreview.moveLayer(new Point(
+                        dragStartLayerPosition.x + (int) Math.round((watermarkOffset.x - dragStartOffset.x) * currentScaleFactor),
+                        dragStartLayerPosition.y + (int) Math.round((watermarkOffset.y - dragStartOffset.y) * currentScaleFactor)));
                 }
             }
             
             @Override
             public void mouseMoved(java.awt.event.MouseEvent e) {
-                if (currentImage != null && !watermarkText.getText().trim().isEmpty()) {
-                    Point watermarkPos = calculateWatermarkPosition();
-                    if (watermarkPos != null) {
-                        Rectangle watermarkBounds = getWatermarkBounds(watermarkPos);
+                if (currentImageSize != null && hasWatermark()) {
+                    Rectangle watermarkBounds = getPreviewWatermarkBounds();
+                    if (watermarkBounds != null) {
                         if (watermarkBounds.contains(e.getPoint())) {
                             imagePreview.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
                             imagePreview.setToolTipText("点击并拖拽调整水印位置");
@@ -1662,140 +1572,92 @@ public class SwingPhotoWatermarkApp extends JFrame {
         });
     }
     
-    // 计算水印位置
-    private Point calculateWatermarkPosition() {
-        if (currentImage == null) return null;
-        
-        Icon icon = imagePreview.getIcon();
-        if (!(icon instanceof ImageIcon)) return null;
-        
-        ImageIcon imageIcon = (ImageIcon) icon;
-        int imgWidth = imageIcon.getIconWidth();
-        int imgHeight = imageIcon.getIconHeight();
-        
-        // 计算图片在JLabel中的实际位置
-        int labelWidth = imagePreview.getWidth();
-        int labelHeight = imagePreview.getHeight();
-        int x = (labelWidth - imgWidth) / 2;
-        int y = (labelHeight - imgHeight) / 2;
-        
-        // 根据位置设置计算基础位置
-        Point basePos = getBaseWatermarkPosition(imgWidth, imgHeight);
-        
-        // 将偏移量转换到预览图片的坐标系（考虑缩放比例）
-        int scaledOffsetX = (int)(watermarkOffset.x * currentScaleFactor);
-        int scaledOffsetY = (int)(watermarkOffset.y * currentScaleFactor);
-        
-        // 添加偏移
-        return new Point(x + basePos.x + scaledOffsetX, y + basePos.y + scaledOffsetY);
+    // 是否设置了可以绘制的水印
+    private boolean hasWatermark() {
+        return imageWatermarkCheckBox.isSelected() ? logoPath != null : !watermarkText.getText().trim().isEmpty();
     }
     
-    // 获取基础水印位置（不包含偏移）
-    private Point getBaseWatermarkPosition(int imgWidth, int imgHeight) {
-        String position = (String) positionComboBox.getSelectedItem();
-        int padding = 20;
-        
-        // 估算文本尺寸
-        Font font = getWatermarkFont();
-        FontMetrics fm = imagePreview.getFontMetrics(font);
-        int textWidth = fm.stringWidth(watermarkText.getText());
-        int textHeight = fm.getHeight();
-        
-        switch (position) {
-            case "左上角": return new Point(padding, padding + textHeight);
-            case "上中": return new Point((imgWidth - textWidth) / 2, padding + textHeight);
-            case "右上角": return new Point(imgWidth - textWidth - padding, padding + textHeight);
-            case "左中": return new Point(padding, (imgHeight + textHeight) / 2);
-            case "中心": return new Point((imgWidth - textWidth) / 2, (imgHeight + textHeight) / 2);
-            case "右中": return new Point(imgWidth - textWidth - padding, (imgHeight + textHeight) / 2);
-            case "左下角": return new Point(padding, imgHeight - padding);
-            case "下中": return new Point((imgWidth - textWidth) / 2, imgHeight - padding);
-            case "右下角": return new Point(imgWidth - textWidth - padding, imgHeight - padding);
-            default: return new Point((imgWidth - textWidth) / 2, (imgHeight + textHeight) / 2);
+    // 选择图片水印文件，支持带透明通道的PNG
+    private void chooseLogoFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("图片文件", "png", "jpg", "jpeg", "gif", "bmp"));
+        if (logoPath != null) {
+            fileChooser.setSelectedFile(new File(logoPath));
+        }
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            setLogoPath(fileChooser.getSelectedFile().getAbsolutePath());
+            imageWatermarkCheckBox.setSelected(true);
+            updatePreview();
         }
     }
     
-    // 获取水印边界矩形
-    private Rectangle getWatermarkBounds(Point watermarkPos) {
-        Font font = getWatermarkFont();
-        FontMetrics fm = imagePreview.getFontMetrics(font);
-        int textWidth = fm.stringWidth(watermarkText.getText());
-        int textHeight = fm.getHeight();
-        
-        return new Rectangle(watermarkPos.x, watermarkPos.y - textHeight, textWidth, textHeight);
+    private void setLogoPath(String path) {
+        logoPath = path;
+        logoFileLabel.setText(path != null ? new File(path).getName() : "未选择");
+        logoFileLabel.setToolTipText(path);
     }
     
-    // 获取水印字体
-    private Font getWatermarkFont() {
-        String fontFamily = (String) fontFamilyComboBox.getSelectedItem();
-        int fontSize = (Integer) fontSizeSpinner.getValue();
-        int style = Font.PLAIN;
-        if (boldCheckBox.isSelected()) style |= Font.BOLD;
-        if (italicCheckBox.isSelected()) style |= Font.ITALIC;
-        return new Font(fontFamily, style, fontSize);
+    // 预览中水印所在的区域（组件坐标），与渲染器绘制的位置一致
+    private Rectangle getPreviewWatermarkBounds() {
+        Rectangle imageBounds = imagePreview.getImageBounds();
+        if (currentImageSize == null || imageBounds == null) return null;
+        
+        Rectangle bounds;
+        try {
+            bounds = watermarkRenderer.getWatermarkBounds(currentImageSize.width, currentImageSize.height,
+                getCurrentSettings(), currentScaleFactor);
+        } catch (UncheckedIOException e) {
+            // 水印图片无法读取时不能拖拽
+            return null;
+        }
+        bounds.translate(imageBounds.x, imageBounds.y);
+        return bounds;
     }
     
-    // 为图片计算基础水印位置的方法
-    private Point getBaseWatermarkPositionForImage(int imageWidth, int imageHeight, int textWidth, int textHeight, String position) {
-        int x, y;
-        switch (position) {
-            case "左上角":
-                x = 10;
-                y = textHeight + 10;
-                break;
-            case "上中":
-                x = (imageWidth - textWidth) / 2;
-                y = textHeight + 10;
-                break;
-            case "右上角":
-                x = imageWidth - textWidth - 10;
-                y = textHeight + 10;
-                break;
-            case "左中":
-                x = 10;
-                y = (imageHeight + textHeight) / 2;
-                break;
-            case "中心":
-                x = (imageWidth - textWidth) / 2;
-                y = (imageHeight + textHeight) / 2;
-                break;
-            case "右中":
-                x = imageWidth - textWidth - 10;
-                y = (imageHeight + textHeight) / 2;
-                break;
-            case "左下角":
-                x = 10;
-                y = imageHeight - 10;
-                break;
-            case "下中":
-                x = (imageWidth - textWidth) / 2;
-                y = imageHeight - 10;
-                break;
-            case "右下角":
-            default:
-                x = imageWidth - textWidth - 10;
-                y = imageHeight - 10;
-                break;
+    // 开始拖拽：缓存水印层和缩小后的原图，拖拽过程中只合成这两层
+    private void startWatermarkLayerDrag() {
+        // 拖拽后使用自定义位置，水印层按相同的设置生成才能与松开后的完整渲染对齐
+        useCustomPosition = true;
+        if (tiledCheckBox.isSelected()) {
+            // 平铺的水印铺满整张图片，没有单独的水印层
+            return;
         }
-        return new Point(x, y);
+        WatermarkSettings settings = getCurrentSettings();
+        WatermarkSprite sprite = watermarkRenderer.getSprite(settings, currentScaleFactor);
+        if (sprite == null) return;
+        
+        dragStartOffset = new Point(watermarkOffset);
+        dragStartLayerPosition = watermarkRenderer.getSpriteOrigin(currentImageSize.width, currentImageSize.height,
+            settings, currentScaleFactor);
+        imagePreview.startLayerDrag(previewBaseImage, sprite.getImage(), dragStartLayerPosition);
     }
     
     // 模板管理相关方法
     private void refreshTemplateList() {
-        templateComboBox.removeAllItems();
-        templateComboBox.addItem("-- 选择模板 --");
-        
-        List<String> templates = templateManager.getTemplateNames();
-        for (String template : templates) {
-            templateComboBox.addItem(template);
+        Object selected = templateComboBox.getSelectedItem();
+        refreshingTemplates = true;
+        try {
+            templateComboBox.removeAllItems();
+            templateComboBox.addItem("-- 选择模板 --");
+            
+            List<String> templates = templateManager.getTemplateNames();
+            for (String template : templates) {
+                templateComboBox.addItem(template);
+            }
+            // 保留原来的选择，但不重新套用模板
+            if (selected != null && templates.contains(selected)) {
+                templateComboBox.setSelectedItem(selected);
+            }
+            
+            deleteTemplateButton.setEnabled(templates.size() > 0);
+        } finally {
+            refreshingTemplates = false;
         }
-        
-        deleteTemplateButton.setEnabled(templates.size() > 0);
     }
     
     private void loadSelectedTemplate() {
         String selectedTemplate = (String) templateComboBox.getSelectedItem();
-        if (selectedTemplate == null || selectedTemplate.equals("-- 选择模板 --")) {
+        if (refreshingTemplates || selectedTemplate == null || selectedTemplate.equals("-- 选择模板 --")) {
             return;
         }
         
@@ -1863,12 +1725,18 @@ public class SwingPhotoWatermarkApp extends JFrame {
         template.setHasShadow(shadowCheckBox.isSelected());
         template.setHasStroke(strokeCheckBox.isSelected());
         template.setUseCustomPosition(useCustomPosition);
-        template.setWatermarkOffset(watermarkOffset);
+        // 复制一份，拖拽时事件线程仍在修改 watermarkOffset，模板可能交给后台线程保存
+        template.setWatermarkOffset(new Point(watermarkOffset));
+        template.setTiled(tiledCheckBox.isSelected());
+        template.setTileSpacing((Integer) tileSpacingSpinner.getValue());
+        template.setImageWatermark(imageWatermarkCheckBox.isSelected());
+        template.setLogoPath(logoPath);
+        template.setLogoScale((Integer) logoScaleSpinner.getValue());
         
         // 计算并保存相对位置（如果使用了自定义位置）
-        if (useCustomPosition && currentImage != null) {
-            double relativeX = (double) watermarkOffset.x / currentImage.getWidth();
-            double relativeY = (double) watermarkOffset.y / currentImage.getHeight();
+        if (useCustomPosition && currentImageSize != null) {
+            double relativeX = (double) watermarkOffset.x / currentImageSize.width;
+            double relativeY = (double) watermarkOffset.y / currentImageSize.height;
             template.setRelativeX(relativeX);
             template.setRelativeY(relativeY);
         }
@@ -1889,12 +1757,20 @@ public class SwingPhotoWatermarkApp extends JFrame {
         rotationTextField.setText(String.valueOf(template.getRotationAngle()));
         shadowCheckBox.setSelected(template.isHasShadow());
         strokeCheckBox.setSelected(template.isHasStroke());
+        tiledCheckBox.setSelected(template.isTiled());
+        tileSpacingSpinner.setValue(template.getTileSpacing() >= 0
+            ? template.getTileSpacing() : WatermarkSettings.DEFAULT_TILE_SPACING);
+        tileSpacingSpinner.setEnabled(template.isTiled());
+        imageWatermarkCheckBox.setSelected(template.isImageWatermark());
+        setLogoPath(template.getLogoPath());
+        logoScaleSpinner.setValue(template.getLogoScale() > 0
+            ? template.getLogoScale() : WatermarkSettings.DEFAULT_LOGO_SCALE);
         useCustomPosition = template.isUseCustomPosition();
         
         // 根据相对位置计算新的偏移量（如果使用了自定义位置且有当前图片）
-        if (template.isUseCustomPosition() && currentImage != null) {
-            int newOffsetX = (int) (template.getRelativeX() * currentImage.getWidth());
-            int newOffsetY = (int) (template.getRelativeY() * currentImage.getHeight());
+        if (template.isUseCustomPosition() && currentImageSize != null) {
+            int newOffsetX = (int) (template.getRelativeX() * currentImageSize.width);
+            int newOffsetY = (int) (template.getRelativeY() * currentImageSize.height);
             watermarkOffset = new Point(newOffsetX, newOffsetY);
         } else {
             watermarkOffset = template.getWatermarkOffset() != null ? 
@@ -1915,10 +1791,14 @@ public class SwingPhotoWatermarkApp extends JFrame {
         }
     }
     
+    // 交给后台线程合并写入，不阻塞事件线程
     private void saveLastSettings() {
+        if (settingsAutosaver == null) {
+            // 界面初始化和加载上次设置期间
+            return;
+        }
         try {
-            WatermarkTemplate currentSettings = getCurrentTemplate();
-            templateManager.saveLastSettings(currentSettings);
+            settingsAutosaver.save(getCurrentTemplate());
         } catch (Exception e) {
             System.out.println("保存设置失败: " + e.getMessage());
         }
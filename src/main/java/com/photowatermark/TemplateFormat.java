@@ -0,0 +1,197 @@
+package com.photowatermark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 模板文件格式
+ * 新格式为带版本号的紧凑JSON，字段增减不影响旧文件的读取；早期用Java序列化保存的 .wmt 文件仍可读取
+ */
+final class TemplateFormat {
+
+    static final int VERSION = 1;
+
+    // Java序列化流的文件头
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ObjectInputFilter LEGACY_FILTER = ObjectInputFilter.Config.createFilter(
+        "com.photowatermark.WatermarkTemplate;java.awt.Color;java.awt.Point;java.awt.geom.Point2D;java.lang.*;!*");
+
+    private TemplateFormat() {
+    }
+
+    /**
+     * 读取模板文件，自动识别JSON和旧的序列化格式
+     */
+    static WatermarkTemplate read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            in.mark(2);
+            int header = (in.read() << 8) | in.read();
+            in.reset();
+            if (header == SERIALIZATION_MAGIC) {
+                return readSerialized(in, file);
+            }
+            return fromJson(MAPPER.readTree(in), file.getFileName().toString());
+        }
+    }
+
+    /**
+     * 写入模板文件：先写临时文件再原子替换，写入中途失败不会留下损坏的模板
+     */
+    static void write(WatermarkTemplate template, Path file) throws IOException {
+        writeJson(toJson(template), file);
+    }
+
+    static ObjectNode toJson(WatermarkTemplate template) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("version", VERSION);
+        putIfNotNull(node, "name", template.getTemplateName());
+        putIfNotNull(node, "text", template.getWatermarkText());
+        putIfNotNull(node, "font", template.getFontFamily());
+        node.put("size", template.getFontSize());
+        node.put("bold", template.isBold());
+        node.put("italic", template.isItalic());
+        if (template.getTextColor() != null) {
+            node.put("color", String.format("#%08X", template.getTextColor().getRGB()));
+        }
+        node.put("transparency", template.getTransparency());
+        putIfNotNull(node, "position", template.getPosition());
+        node.put("shadow", template.isHasShadow());
+        node.put("stroke", template.isHasStroke());
+        node.put("rotation", template.getRotationAngle());
+        putIfNotNull(node, "format", template.getOutputFormat());
+        node.put("quality", template.getJpegQuality());
+        node.put("custom", template.isUseCustomPosition());
+        if (template.getWatermarkOffset() != null) {
+            node.put("offsetX", template.getWatermarkOffset().x);
+            node.put("offsetY", template.getWatermarkOffset().y);
+        }
+        node.put("relX", template.getRelativeX());
+        node.put("relY", template.getRelativeY());
+        node.put("tiled", template.isTiled());
+        node.put("tileSpacing", template.getTileSpacing());
+        node.put("image", template.isImageWatermark());
+        putIfNotNull(node, "logo", template.getLogoPath());
+        node.put("logoScale", template.getLogoScale());
+        return node;
+    }
+
+    /**
+     * 从JSON读取模板，缺少的字段取默认值，版本高于当前支持的版本时报错
+     */
+    static WatermarkTemplate fromJson(JsonNode node, String source) throws IOException {
+        if (node == null || !node.isObject()) {
+            throw new IOException("无效的模板文件: " + source);
+        }
+        int version = node.path("version").asInt(0);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("不支持的模板版本 " + version + ": " + source);
+        }
+
+        WatermarkTemplate template = new WatermarkTemplate();
+        template.setTemplateName(textOrNull(node, "name"));
+        template.setWatermarkText(textOrNull(node, "text"));
+        template.setFontFamily(textOrNull(node, "font"));
+        template.setFontSize(node.path("size").asInt());
+        template.setBold(node.path("bold").asBoolean());
+        template.setItalic(node.path("italic").asBoolean());
+        String color = textOrNull(node, "color");
+        if (color != null) {
+            try {
+                template.setTextColor(new Color((int) Long.parseLong(color.substring(1), 16), true));
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IOException("无效的颜色 " + color + ": " + source, e);
+            }
+        }
+        template.setTransparency(node.path("transparency").asInt());
+        template.setPosition(textOrNull(node, "position"));
+        template.setHasShadow(node.path("shadow").asBoolean());
+        template.setHasStroke(node.path("stroke").asBoolean());
+        template.setRotationAngle(node.path("rotation").asInt());
+        template.setOutputFormat(textOrNull(node, "format"));
+        template.setJpegQuality(node.path("quality").asInt());
+        template.setUseCustomPosition(node.path("custom").asBoolean());
+        if (node.has("offsetX") || node.has("offsetY")) {
+            template.setWatermarkOffset(new Point(node.path("offsetX").asInt(), node.path("offsetY").asInt()));
+        }
+        template.setRelativeX(node.path("relX").asDouble());
+        template.setRelativeY(node.path("relY").asDouble());
+        template.setTiled(node.path("tiled").asBoolean());
+        template.setTileSpacing(node.path("tileSpacing").asInt(WatermarkTemplate.UNSET_TILE_SPACING));
+        template.setImageWatermark(node.path("image").asBoolean());
+        template.setLogoPath(textOrNull(node, "logo"));
+        template.setLogoScale(node.path("logoScale").asInt());
+        return template;
+    }
+
+    static JsonNode readJson(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return MAPPER.readTree(in);
+        }
+    }
+
+    static ObjectNode createObject() {
+        return MAPPER.createObjectNode();
+    }
+
+    /**
+     * 写入JSON：先写同目录下的临时文件再原子替换
+     * 临时文件名唯一，多个实例或进程同时写同一个文件时互不干扰
+     */
+    static void writeJson(JsonNode node, Path file) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                MAPPER.writeValue(out, node);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static WatermarkTemplate readSerialized(InputStream in, Path file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(in)) {
+            // 只允许模板实际用到的类，避免反序列化任意对象
+            ois.setObjectInputFilter(LEGACY_FILTER);
+            WatermarkTemplate template = (WatermarkTemplate) ois.readObject();
+            // 旧格式没有平铺间距，反序列化不执行字段初始化，读出的 0 并非用户设置
+            template.setTileSpacing(WatermarkTemplate.UNSET_TILE_SPACING);
+            return template;
+        } catch (ClassNotFoundException | ClassCastException | InvalidClassException e) {
+            throw new IOException("无效的模板文件: " + file.getFileName(), e);
+        }
+    }
+
+    private static void putIfNotNull(ObjectNode node, String field, String value) {
+        if (value != null) {
+            node.put(field, value);
+        }
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
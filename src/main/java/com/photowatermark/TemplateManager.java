@@ -1,148 +1,395 @@
 package com.photowatermark;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import java.io.*;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 水印模板管理器，负责模板的保存、加载和管理
+ * 所有模板的内容汇总在一个索引文件中，启动时只需读取索引，不必逐个解析模板文件；
+ * 模板常驻内存，切换模板和批量导出时不再访问磁盘；目录由 WatchService 监视，
+ * 其他进程对模板文件的增删改会逐个同步到内存和索引
  */
 public class TemplateManager {
     private static final String TEMPLATES_DIR = "watermark_templates";
     private static final String TEMPLATE_EXTENSION = ".wmt"; // Watermark Template
     private static final String LAST_SETTINGS_FILE = "last_settings.wmt";
-    
+    private static final String INDEX_FILE = "index.json";
+
+    private final Path templatesDir = new File(TEMPLATES_DIR).toPath();
+    // 文件名 -> 索引项
+    private final Map<String, IndexEntry> index = new HashMap<>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private WatchService watchService;
+
     public TemplateManager() {
         // 确保模板目录存在
         File templatesDir = new File(TEMPLATES_DIR);
         if (!templatesDir.exists()) {
             templatesDir.mkdirs();
         }
+        loadIndex();
+        startWatching();
+    }
+
+    /**
+     * 模板被其他进程增删改后通知，在监视线程中调用；本实例自己的保存和删除不会触发
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * 停止监视模板目录
+     */
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // 忽略关闭失败
+            }
+            watchService = null;
+        }
     }
-    
+
     /**
      * 保存水印模板
      */
-    public boolean saveTemplate(WatermarkTemplate template) {
+    public synchronized boolean saveTemplate(WatermarkTemplate template) {
         if (template.getTemplateName() == null || template.getTemplateName().trim().isEmpty()) {
             return false;
         }
-        
+
         String fileName = sanitizeFileName(template.getTemplateName()) + TEMPLATE_EXTENSION;
-        File file = new File(TEMPLATES_DIR, fileName);
-        
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(template);
+        Path file = templatesDir.resolve(fileName);
+
+        try {
+            ObjectNode node = TemplateFormat.toJson(template);
+            TemplateFormat.writeJson(node, file);
+            index.put(fileName, IndexEntry.of(file, node));
+            writeIndex();
             return true;
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
     }
-    
+
     /**
      * 加载水印模板
      */
-    public WatermarkTemplate loadTemplate(String templateName) {
+    public synchronized WatermarkTemplate loadTemplate(String templateName) {
         String fileName = sanitizeFileName(templateName) + TEMPLATE_EXTENSION;
-        File file = new File(TEMPLATES_DIR, fileName);
-        
-        if (!file.exists()) {
+        IndexEntry entry = index.get(fileName);
+        if (entry == null && watchService == null) {
+            // 无法监视目录时，内存中没有的模板再到磁盘上找一次
+            entry = refreshEntry(fileName);
+        }
+        if (entry == null) {
             return null;
         }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            return (WatermarkTemplate) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+
+        try {
+            // 每次返回新对象，调用方修改不影响缓存
+            return TemplateFormat.fromJson(entry.template, fileName);
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
-    
+
     /**
      * 获取所有模板列表
      */
-    public List<String> getTemplateNames() {
+    public synchronized List<String> getTemplateNames() {
         List<String> templateNames = new ArrayList<>();
-        File templatesDir = new File(TEMPLATES_DIR);
-        
-        if (templatesDir.exists() && templatesDir.isDirectory()) {
-            File[] files = templatesDir.listFiles((dir, name) -> 
-                name.endsWith(TEMPLATE_EXTENSION) && !name.equals(LAST_SETTINGS_FILE));
-            
-            if (files != null) {
-                for (File file : files) {
-                    String name = file.getName();
-                    // 移除扩展名
-                    String templateName = name.substring(0, name.length() - TEMPLATE_EXTENSION.length());
-                    templateNames.add(templateName);
-                }
-            }
+        for (String name : index.keySet()) {
+            // 移除扩展名
+            templateNames.add(name.substring(0, name.length() - TEMPLATE_EXTENSION.length()));
         }
-        
+        Collections.sort(templateNames);
         return templateNames;
     }
-    
+
     /**
      * 删除模板
      */
-    public boolean deleteTemplate(String templateName) {
+    public synchronized boolean deleteTemplate(String templateName) {
         String fileName = sanitizeFileName(templateName) + TEMPLATE_EXTENSION;
         File file = new File(TEMPLATES_DIR, fileName);
-        
-        if (file.exists()) {
-            return file.delete();
+
+        boolean deleted = file.exists() && file.delete();
+        if (index.remove(fileName) != null) {
+            writeIndexQuietly();
         }
-        
-        return false;
+        return deleted;
     }
-    
+
     /**
      * 保存最后的设置
      */
     public boolean saveLastSettings(WatermarkTemplate template) {
-        File file = new File(TEMPLATES_DIR, LAST_SETTINGS_FILE);
-        
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(template);
+        try {
+            TemplateFormat.write(template, templatesDir.resolve(LAST_SETTINGS_FILE));
             return true;
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
     }
-    
+
     /**
      * 加载最后的设置
      */
     public WatermarkTemplate loadLastSettings() {
         File file = new File(TEMPLATES_DIR, LAST_SETTINGS_FILE);
-        
+
         if (!file.exists()) {
             return null;
         }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            return (WatermarkTemplate) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+
+        try {
+            return readTemplateFile(file);
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
-    
+
+    /**
+     * 从任意路径读取模板文件，供命令行等不使用模板目录的场景
+     */
+    public static WatermarkTemplate readTemplateFile(File file) throws IOException {
+        return TemplateFormat.read(file.toPath());
+    }
+
     /**
      * 清理文件名，移除不安全的字符
      */
     private String sanitizeFileName(String fileName) {
         return fileName.replaceAll("[^a-zA-Z0-9\\u4e00-\\u9fa5_\\-]", "_");
     }
-    
+
     /**
      * 检查模板是否存在
      */
-    public boolean templateExists(String templateName) {
-        String fileName = sanitizeFileName(templateName) + TEMPLATE_EXTENSION;
-        File file = new File(TEMPLATES_DIR, fileName);
-        return file.exists();
+    public synchronized boolean templateExists(String templateName) {
+        return index.containsKey(sanitizeFileName(templateName) + TEMPLATE_EXTENSION);
+    }
+
+    /**
+     * 读取索引，并与目录中的模板文件对照：补上新增或修改过的模板，去掉已删除的模板。
+     * 索引缺失、损坏或版本不符时，逐个读取模板文件重建
+     */
+    private void loadIndex() {
+        Path indexFile = templatesDir.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            try {
+                JsonNode root = TemplateFormat.readJson(indexFile);
+                if (root.path("version").asInt() == TemplateFormat.VERSION) {
+                    Iterator<Map.Entry<String, JsonNode>> fields = root.path("templates").fields();
+                    while (fields.hasNext()) {
+                        Map.Entry<String, JsonNode> field = fields.next();
+                        JsonNode entry = field.getValue();
+                        index.put(field.getKey(), new IndexEntry(
+                            entry.path("modified").asLong(), entry.path("size").asLong(), entry.path("template")));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("模板索引无效，将重新建立: " + e.getMessage());
+                index.clear();
+            }
+        }
+
+        String[] names = new File(TEMPLATES_DIR).list((dir, name) -> isTemplateFile(name));
+        Set<String> present = new HashSet<>();
+        if (names != null) {
+            Collections.addAll(present, names);
+        }
+
+        boolean changed = index.keySet().retainAll(present);
+        for (String name : present) {
+            // 只比较文件属性，关闭期间被修改过的模板才重新读取
+            IndexEntry before = index.get(name);
+            if (refreshEntry(name) != before) {
+                changed = true;
+            }
+        }
+
+        if (changed || !Files.exists(indexFile)) {
+            writeIndexQuietly();
+        }
+    }
+
+    /**
+     * 按磁盘上的模板文件更新内存中的一项：文件已删除则移除，修改时间或大小变化则重新读取。
+     * 读取失败（如其他进程正在写入）时保留旧内容，等待下一次变更事件
+     */
+    private IndexEntry refreshEntry(String fileName) {
+        Path file = templatesDir.resolve(fileName);
+        IndexEntry entry = index.get(fileName);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (entry != null && entry.matches(attributes)) {
+                return entry;
+            }
+            entry = new IndexEntry(attributes, TemplateFormat.toJson(TemplateFormat.read(file)));
+            index.put(fileName, entry);
+            return entry;
+        } catch (NoSuchFileException e) {
+            index.remove(fileName);
+            return null;
+        } catch (IOException e) {
+            System.err.println("无法读取模板 " + fileName + ": " + e.getMessage());
+            return entry;
+        }
+    }
+
+    private boolean isTemplateFile(String name) {
+        return name.endsWith(TEMPLATE_EXTENSION) && !name.equals(LAST_SETTINGS_FILE);
+    }
+
+    private void startWatching() {
+        try {
+            watchService = templatesDir.getFileSystem().newWatchService();
+            templatesDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("无法监视模板目录，外部修改需重启后生效: " + e.getMessage());
+            watchService = null;
+            return;
+        }
+
+        WatchService service = watchService;
+        Thread thread = new Thread(() -> watch(service), "template-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Set<String> names = new HashSet<>();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        String name = event.context().toString();
+                        if (isTemplateFile(name)) {
+                            names.add(name);
+                        }
+                    }
+                }
+                if (applyChanges(names, overflow)) {
+                    for (Runnable listener : changeListeners) {
+                        listener.run();
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 已停止监视
+        }
+    }
+
+    /**
+     * 把一批目录事件同步到内存和索引，事件丢失时与整个目录重新对照
+     */
+    private synchronized boolean applyChanges(Set<String> names, boolean overflow) {
+        if (overflow) {
+            String[] listed = new File(TEMPLATES_DIR).list((dir, name) -> isTemplateFile(name));
+            if (listed != null) {
+                Collections.addAll(names, listed);
+            }
+            names.addAll(index.keySet());
+        }
+
+        boolean changed = false;
+        for (String name : names) {
+            IndexEntry before = index.get(name);
+            if (refreshEntry(name) != before) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            writeIndexQuietly();
+        }
+        return changed;
+    }
+
+    private void writeIndex() throws IOException {
+        ObjectNode templates = TemplateFormat.createObject();
+        for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+            ObjectNode node = templates.putObject(entry.getKey());
+            node.put("modified", entry.getValue().modified);
+            node.put("size", entry.getValue().size);
+            node.set("template", entry.getValue().template);
+        }
+        ObjectNode root = TemplateFormat.createObject();
+        root.put("version", TemplateFormat.VERSION);
+        root.set("templates", templates);
+        TemplateFormat.writeJson(root, templatesDir.resolve(INDEX_FILE));
+    }
+
+    /**
+     * 索引只是加速用的副本，写入失败时模板文件本身仍然完整
+     */
+    private void writeIndexQuietly() {
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            System.err.println("无法写入模板索引: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 索引项：模板文件的修改时间、大小和模板内容
+     */
+    private static final class IndexEntry {
+        final long modified;
+        final long size;
+        final JsonNode template;
+
+        IndexEntry(long modified, long size, JsonNode template) {
+            this.modified = modified;
+            this.size = size;
+            this.template = template;
+        }
+
+        IndexEntry(BasicFileAttributes attributes, JsonNode template) {
+            this(attributes.lastModifiedTime().toMillis(), attributes.size(), template);
+        }
+
+        static IndexEntry of(Path file, JsonNode template) throws IOException {
+            return new IndexEntry(Files.readAttributes(file, BasicFileAttributes.class), template);
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return modified == attributes.lastModifiedTime().toMillis() && size == attributes.size();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,281 @@
+package com.photowatermark;
+
+import com.photowatermark.export.BatchExporter;
+import com.photowatermark.export.ExportOptions;
+import com.photowatermark.export.ImageExporter;
+import com.photowatermark.export.OutputFiles;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 命令行批量添加水印，不创建任何窗口，可在无显示器的服务器和定时任务中运行
+ */
+public class WatermarkCli {
+
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList(
+        "jpg", "jpeg", "png", "gif", "bmp", "tif", "tiff"
+    );
+
+    // 退出码
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURES = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private final List<File> inputs = new ArrayList<>();
+    private File templateFile;
+    private File outputFolder;
+    private String format = "JPEG";
+    private int quality = 85;
+    private int threads = BatchExporter.defaultWorkerCount();
+    private String suffix = "_watermarked";
+    private boolean recursive;
+    private boolean jpegRegionReencode;
+    private boolean tiledProcessing;
+
+    public static void main(String[] args) {
+        // 必须在加载任何AWT类之前设置
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new WatermarkCli().run(args));
+    }
+
+    int run(String[] args) {
+        try {
+            if (!parseArguments(args)) {
+                printUsage();
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("参数错误: " + e.getMessage());
+            printUsage();
+            return EXIT_USAGE;
+        }
+
+        try {
+            WatermarkTemplate template = TemplateManager.readTemplateFile(templateFile);
+            List<File> sources = collectImages();
+            if (sources.isEmpty()) {
+                System.err.println("没有找到可处理的图片");
+                return EXIT_USAGE;
+            }
+            if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+                System.err.println("无法创建输出文件夹: " + outputFolder);
+                return EXIT_USAGE;
+            }
+
+            // 与界面批量导出相同：按顺序预先确定输出文件名
+            List<BatchExporter.Job> jobs = new ArrayList<>();
+            Set<File> reservedFiles = new HashSet<>();
+            for (File source : sources) {
+                File outputFile = OutputFiles.uniqueFile(new File(outputFolder, outputFileName(source)), reservedFiles);
+                reservedFiles.add(outputFile);
+                jobs.add(new BatchExporter.Job(source, outputFile));
+            }
+
+            ExportOptions options = new ExportOptions();
+            options.setFormat(format);
+            options.setJpegQuality(quality / 100.0f);
+            options.setJpegRegionReencode(jpegRegionReencode);
+            options.setTiledProcessing(tiledProcessing);
+            ImageExporter exporter = new ImageExporter(new WatermarkRenderer(), WatermarkSettings.from(template), options);
+
+            long start = System.nanoTime();
+            BatchExporter.Result result = new BatchExporter(exporter, threads).export(jobs);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            for (String error : result.getErrorMessages()) {
+                System.err.println(error);
+            }
+            System.out.println("批量导出完成: 成功 " + result.getSuccessCount() + " 张, 失败 " + result.getFailCount()
+                + " 张, 用时 " + elapsedMillis + " ms");
+            return result.getFailCount() > 0 ? EXIT_FAILURES : EXIT_OK;
+        } catch (IOException e) {
+            System.err.println("错误: " + e.getMessage());
+            return EXIT_USAGE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("导出被中断");
+            return EXIT_FAILURES;
+        }
+    }
+
+    /**
+     * 解析参数，请求帮助时返回 false
+     */
+    private boolean parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    return false;
+                case "-t":
+                case "--template":
+                    templateFile = new File(value(args, ++i, arg));
+                    break;
+                case "-o":
+                case "--output":
+                    outputFolder = new File(value(args, ++i, arg));
+                    break;
+                case "-f":
+                case "--format":
+                    format = value(args, ++i, arg).toUpperCase();
+                    if ("JPG".equals(format)) {
+                        format = "JPEG";
+                    }
+                    if (!"JPEG".equals(format) && !"PNG".equals(format)) {
+                        throw new IllegalArgumentException("不支持的输出格式: " + format);
+                    }
+                    break;
+                case "-q":
+                case "--quality":
+                    quality = intValue(args, ++i, arg, 1, 100);
+                    break;
+                case "-j":
+                case "--threads":
+                    threads = intValue(args, ++i, arg, 1, 1024);
+                    break;
+                case "-s":
+                case "--suffix":
+                    suffix = value(args, ++i, arg);
+                    break;
+                case "-l":
+                case "--list":
+                    readFileList(new File(value(args, ++i, arg)));
+                    break;
+                case "-r":
+                case "--recursive":
+                    recursive = true;
+                    break;
+                case "--jpeg-region":
+                    jpegRegionReencode = true;
+                    break;
+                case "--tiled":
+                    tiledProcessing = true;
+                    break;
+                default:
+                    if (arg.startsWith("-")) {
+                        throw new IllegalArgumentException("未知选项: " + arg);
+                    }
+                    inputs.add(new File(arg));
+                    break;
+            }
+        }
+
+        if (templateFile == null) {
+            throw new IllegalArgumentException("缺少模板文件 (--template)");
+        }
+        if (outputFolder == null) {
+            throw new IllegalArgumentException("缺少输出文件夹 (--output)");
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("缺少输入目录或文件");
+        }
+        return true;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " 需要一个参数");
+        }
+        return args[index];
+    }
+
+    private static int intValue(String[] args, int index, String option, int min, int max) {
+        String text = value(args, index, option);
+        try {
+            int number = Integer.parseInt(text);
+            if (number < min || number > max) {
+                throw new IllegalArgumentException(option + " 的取值范围为 " + min + "-" + max);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " 需要整数: " + text);
+        }
+    }
+
+    // 文件列表：每行一个路径，忽略空行和 # 开头的注释
+    private void readFileList(File listFile) {
+        try {
+            for (String line : Files.readAllLines(listFile.toPath(), StandardCharsets.UTF_8)) {
+                String path = line.trim();
+                if (!path.isEmpty() && !path.startsWith("#")) {
+                    inputs.add(new File(path));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法读取文件列表: " + listFile);
+        }
+    }
+
+    private List<File> collectImages() throws IOException {
+        List<File> images = new ArrayList<>();
+        for (File input : inputs) {
+            if (input.isDirectory()) {
+                addImagesFromDirectory(input, images);
+            } else if (input.isFile()) {
+                images.add(input);
+            } else {
+                throw new IOException("输入不存在: " + input);
+            }
+        }
+        return images;
+    }
+
+    private void addImagesFromDirectory(File directory, List<File> images) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // 按文件名排序，保证输出命名可重复
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (recursive) {
+                    addImagesFromDirectory(file, images);
+                }
+            } else if (isImageFile(file)) {
+                images.add(file);
+            }
+        }
+    }
+
+    private static boolean isImageFile(File file) {
+        String name = file.getName().toLowerCase();
+        int lastDotIndex = name.lastIndexOf('.');
+        return lastDotIndex > 0 && IMAGE_EXTENSIONS.contains(name.substring(lastDotIndex + 1));
+    }
+
+    private String outputFileName(File source) {
+        String name = source.getName();
+        int lastDotIndex = name.lastIndexOf('.');
+        String nameWithoutExt = lastDotIndex > 0 ? name.substring(0, lastDotIndex) : name;
+        return nameWithoutExt + suffix + "." + format.toLowerCase();
+    }
+
+    private static void printUsage() {
+        System.out.println("用法: java -cp photo-watermark2-1.0.0.jar com.photowatermark.WatermarkCli [选项] <输入目录或图片...>");
+        System.out.println();
+        System.out.println("  -t, --template <文件>   水印模板 (.wmt)，必填");
+        System.out.println("  -o, --output <目录>     输出文件夹，必填");
+        System.out.println("  -f, --format <格式>     输出格式 JPEG 或 PNG，默认 JPEG");
+        System.out.println("  -q, --quality <1-100>   JPEG 质量，默认 85");
+        System.out.println("  -j, --threads <数量>    并行导出线程数，默认为CPU核心数");
+        System.out.println("  -s, --suffix <文本>     输出文件名后缀，默认 _watermarked");
+        System.out.println("  -l, --list <文件>       从文件读取输入路径，每行一个");
+        System.out.println("  -r, --recursive         递归处理子目录");
+        System.out.println("      --jpeg-region       JPEG 原图只重新编码水印区域");
+        System.out.println("      --tiled             超大图片分块处理，限制内存占用");
+        System.out.println("  -h, --help              显示帮助");
+    }
+}
@@ -0,0 +1,201 @@
+package com.photowatermark;
+
+import javax.swing.JComponent;
+import javax.swing.UIManager;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * 水印预览区域
+ * 平时显示后台渲染好的完整预览；拖拽水印时把缓存的水印层叠加在缓存的缩小原图上，
+ * 鼠标每次移动只做两次贴图并只重绘变化的区域。缩小原图另存一份在 VolatileImage 中，由显卡完成贴图
+ */
+class WatermarkPreviewPanel extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    // 后台渲染好的完整预览
+    private BufferedImage frame;
+    // 没有图片时显示的提示
+    private String message;
+
+    // 分层显示：底图与水印层，layer 不为 null 时优先于 frame 显示
+    private BufferedImage base;
+    private BufferedImage layer;
+    // 水印层左上角相对图片左上角的位置
+    private Point layerPosition;
+    private boolean dragging;
+
+    // 底图在显存中的副本
+    private VolatileImage baseBuffer;
+    private BufferedImage bufferedBase;
+
+    WatermarkPreviewPanel(String message) {
+        this.message = message;
+        setOpaque(true);
+        setDoubleBuffered(true);
+        setFont(UIManager.getFont("Label.font"));
+        setForeground(UIManager.getColor("Label.foreground"));
+        setBackground(UIManager.getColor("Panel.background"));
+    }
+
+    /**
+     * 显示完整预览；拖拽进行中时先保存，拖拽结束后的下一帧才替换分层显示
+     */
+    void showFrame(BufferedImage frame) {
+        this.frame = frame;
+        this.message = null;
+        if (!dragging) {
+            base = null;
+            layer = null;
+        }
+        repaint();
+    }
+
+    /**
+     * 清除图片，显示提示文字
+     */
+    void showMessage(String message) {
+        this.message = message;
+        frame = null;
+        base = null;
+        layer = null;
+        dragging = false;
+        releaseBaseBuffer();
+        repaint();
+    }
+
+    /**
+     * 开始分层显示，position 为水印层左上角相对图片左上角的位置
+     */
+    void startLayerDrag(BufferedImage base, BufferedImage layer, Point position) {
+        this.base = base;
+        this.layer = layer;
+        this.layerPosition = new Point(position);
+        this.dragging = true;
+        repaint();
+    }
+
+    /**
+     * 移动水印层，只重绘水印层经过的区域
+     */
+    void moveLayer(Point position) {
+        if (layer == null || position.equals(layerPosition)) {
+            return;
+        }
+        Rectangle dirty = layerBounds();
+        layerPosition = new Point(position);
+        dirty.add(layerBounds());
+        repaint(dirty);
+    }
+
+    /**
+     * 结束拖拽，分层画面保留到下一次 showFrame，避免完整预览渲染完成前闪回旧画面
+     */
+    void stopLayerDrag() {
+        dragging = false;
+    }
+
+    /**
+     * 当前显示的图片在组件中的位置，没有图片时返回 null
+     */
+    Rectangle getImageBounds() {
+        BufferedImage shown = layer != null ? base : frame;
+        if (shown == null) {
+            return null;
+        }
+        Insets insets = getInsets();
+        int areaWidth = getWidth() - insets.left - insets.right;
+        int areaHeight = getHeight() - insets.top - insets.bottom;
+        return new Rectangle(insets.left + (areaWidth - shown.getWidth()) / 2,
+            insets.top + (areaHeight - shown.getHeight()) / 2,
+            shown.getWidth(), shown.getHeight());
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        Insets insets = getInsets();
+        BufferedImage shown = layer != null ? base : frame;
+        int width = shown != null ? shown.getWidth() : 0;
+        int height = shown != null ? shown.getHeight() : 0;
+        return new Dimension(width + insets.left + insets.right, height + insets.top + insets.bottom);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+
+        Rectangle imageBounds = getImageBounds();
+        if (layer != null) {
+            drawBase(g, imageBounds.x, imageBounds.y);
+            g.drawImage(layer, imageBounds.x + layerPosition.x, imageBounds.y + layerPosition.y, null);
+        } else if (frame != null) {
+            g.drawImage(frame, imageBounds.x, imageBounds.y, null);
+        } else if (message != null) {
+            FontMetrics fm = g.getFontMetrics(getFont());
+            g.setColor(getForeground());
+            g.setFont(getFont());
+            g.drawString(message, (getWidth() - fm.stringWidth(message)) / 2,
+                (getHeight() - fm.getHeight()) / 2 + fm.getAscent());
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        releaseBaseBuffer();
+        super.removeNotify();
+    }
+
+    // 水印层在组件中的范围
+    private Rectangle layerBounds() {
+        Rectangle imageBounds = getImageBounds();
+        return new Rectangle(imageBounds.x + layerPosition.x, imageBounds.y + layerPosition.y,
+            layer.getWidth(), layer.getHeight());
+    }
+
+    // 从显存副本绘制底图，副本丢失或不可用时重新复制，无法创建时直接绘制 BufferedImage
+    private void drawBase(Graphics g, int x, int y) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) {
+            g.drawImage(base, x, y, null);
+            return;
+        }
+
+        do {
+            int status = baseBuffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : baseBuffer.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE
+                    || baseBuffer.getWidth() != base.getWidth() || baseBuffer.getHeight() != base.getHeight()) {
+                releaseBaseBuffer();
+                baseBuffer = gc.createCompatibleVolatileImage(base.getWidth(), base.getHeight());
+                status = VolatileImage.IMAGE_RESTORED;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED || bufferedBase != base) {
+                Graphics bufferGraphics = baseBuffer.createGraphics();
+                bufferGraphics.drawImage(base, 0, 0, null);
+                bufferGraphics.dispose();
+                bufferedBase = base;
+            }
+            g.drawImage(baseBuffer, x, y, null);
+        } while (baseBuffer.contentsLost());
+    }
+
+    private void releaseBaseBuffer() {
+        if (baseBuffer != null) {
+            baseBuffer.flush();
+            baseBuffer = null;
+        }
+        bufferedBase = null;
+    }
+}
@@ -10,6 +10,9 @@ import java.io.Serializable;
 public class WatermarkTemplate implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    // 未设置平铺间距，使用默认间距；0 表示水印紧挨着排列
+    public static final int UNSET_TILE_SPACING = -1;
+    
     private String templateName;
     private String watermarkText;
     private String fontFamily;
@@ -29,6 +32,15 @@ public class WatermarkTemplate implements Serializable {
     // 相对位置信息（0.0-1.0之间的比例）
     private double relativeX;
     private double relativeY;
+    // 平铺模式：水印按交错网格铺满整张图片
+    private boolean tiled;
+    // 平铺时相邻水印之间的间距（像素）
+    private int tileSpacing = UNSET_TILE_SPACING;
+    // 图片水印：使用图片（如Logo）代替文本
+    private boolean imageWatermark;
+    private String logoPath;
+    // 图片水印相对原始尺寸的缩放百分比
+    private int logoScale;
     
     public WatermarkTemplate() {
         // 默认构造函数
@@ -183,6 +195,46 @@ public class WatermarkTemplate implements Serializable {
         this.relativeY = relativeY;
     }
     
+    public boolean isTiled() {
+        return tiled;
+    }
+    
+    public void setTiled(boolean tiled) {
+        this.tiled = tiled;
+    }
+    
+    public int getTileSpacing() {
+        return tileSpacing;
+    }
+    
+    public void setTileSpacing(int tileSpacing) {
+        this.tileSpacing = tileSpacing;
+    }
+    
+    public boolean isImageWatermark() {
+        return imageWatermark;
+    }
+    
+    public void setImageWatermark(boolean imageWatermark) {
+        this.imageWatermark = imageWatermark;
+    }
+    
+    public String getLogoPath() {
+        return logoPath;
+    }
+    
+    public void setLogoPath(String logoPath) {
+        this.logoPath = logoPath;
+    }
+    
+    public int getLogoScale() {
+        return logoScale;
+    }
+    
+    public void setLogoScale(int logoScale) {
+        this.logoScale = logoScale;
+    }
+    
     @Override
     public String toString() {
         return templateName != null ? templateName : "未命名模板";
@@ -0,0 +1,178 @@
+package com.photowatermark.cache;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按字节预算限制的解码图片缓存
+ * 最近使用的图片以强引用保存在LRU中，占用超出预算时最久未用的图片降级为软引用：
+ * 内存充足时仍可命中，内存紧张时由GC回收，之后需要时重新加载。可在多个线程中同时使用
+ */
+public class ImageCache<K, V> {
+
+    /**
+     * 缓存未命中时加载图片
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private final ToLongFunction<? super V> weigher;
+    private long maxBytes;
+
+    // 按访问顺序排列，最久未用的在前
+    private final LinkedHashMap<K, Entry<V>> strongEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, SoftEntry<K, V>> softEntries = new HashMap<>();
+    private final ReferenceQueue<V> collected = new ReferenceQueue<>();
+    private long usedBytes;
+
+    /**
+     * weigher 返回图片占用的字节数，一般为像素数乘以每像素字节数
+     */
+    public ImageCache(long maxBytes, ToLongFunction<? super V> weigher) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("缓存预算不能为负数");
+        }
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * 读取缓存的图片，未缓存或已被回收时返回 null
+     */
+    public synchronized V getIfPresent(K key) {
+        expungeCollected();
+        Entry<V> entry = strongEntries.get(key);
+        if (entry != null) {
+            return entry.value;
+        }
+
+        SoftEntry<K, V> softEntry = softEntries.remove(key);
+        V value = softEntry != null ? softEntry.get() : null;
+        if (value != null) {
+            // 重新使用的图片回到LRU中
+            putStrong(key, value, softEntry.bytes);
+        }
+        return value;
+    }
+
+    /**
+     * 读取缓存的图片，未缓存时调用 loader 加载并放入缓存
+     * 加载在调用线程中进行，不持有锁；同一图片被同时请求时可能加载多次，以最后一次的结果为准
+     */
+    public V get(K key, Loader<? extends V> loader) throws IOException {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.load();
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        expungeCollected();
+        remove(key);
+        putStrong(key, value, weigher.applyAsLong(value));
+    }
+
+    /**
+     * 移除图片，例如原文件已被修改时
+     */
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    public synchronized void clear() {
+        strongEntries.clear();
+        softEntries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * 修改预算，超出部分立即降级为软引用
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("缓存预算不能为负数");
+        }
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 强引用部分占用的字节数
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private void putStrong(K key, V value, long bytes) {
+        strongEntries.put(key, new Entry<>(value, bytes));
+        usedBytes += bytes;
+        evict();
+    }
+
+    // 超出预算时把最久未用的图片降级为软引用；刚放入的图片即使单独超出预算也保留到下次淘汰
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> it = strongEntries.entrySet().iterator();
+        while (usedBytes > maxBytes && strongEntries.size() > 1 && it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            it.remove();
+            usedBytes -= eldest.getValue().bytes;
+            softEntries.put(eldest.getKey(),
+                new SoftEntry<>(eldest.getKey(), eldest.getValue().value, eldest.getValue().bytes, collected));
+        }
+    }
+
+    private void remove(K key) {
+        Entry<V> entry = strongEntries.remove(key);
+        if (entry != null) {
+            usedBytes -= entry.bytes;
+        }
+        softEntries.remove(key);
+    }
+
+    // 清理已被GC回收的软引用项
+    @SuppressWarnings("unchecked")
+    private void expungeCollected() {
+        SoftEntry<K, V> softEntry;
+        while ((softEntry = (SoftEntry<K, V>) collected.poll()) != null) {
+            softEntries.remove(softEntry.key, softEntry);
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long bytes;
+
+        Entry(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class SoftEntry<K, V> extends SoftReference<V> {
+        final K key;
+        final long bytes;
+
+        SoftEntry(K key, V value, long bytes, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+}
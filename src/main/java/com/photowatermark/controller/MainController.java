@@ -22,8 +22,10 @@ import javafx.stage.Stage;
 
 import java.io.File;
 import java.net.URL;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -158,6 +160,8 @@ public class MainController implements Initializable {
     // 数据模型
     private ObservableList<ImageItem> imageList;
     private ExecutorService executorService;
+    // 正在后台加载的图片项，只在JavaFX线程中访问
+    private final Set<ImageItem> loadingItems = new HashSet<>();
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -297,22 +301,30 @@ public class MainController implements Initializable {
      * 加载图片预览
      */
     private void loadImagePreview(ImageItem imageItem) {
-        if (imageItem.getImage() != null) {
-            previewImageView.setImage(imageItem.getImage());
-            
-            Image image = imageItem.getImage();
-            String info = String.format("%s\n尺寸: %.0f × %.0f\n大小: %s",
-                imageItem.getFileName(),
-                image.getWidth(),
-                image.getHeight(),
-                imageItem.getFormattedFileSize()
-            );
-            previewStatusLabel.setText(info);
+        Image image = imageItem.getImage();
+        if (image != null) {
+            showImagePreview(imageItem, image);
         } else {
             previewStatusLabel.setText("正在加载: " + imageItem.getFileName());
+            // 图片可能已被缓存淘汰，重新加载
+            if (!loadingItems.contains(imageItem)) {
+                loadImageAsync(imageItem);
+            }
         }
     }
     
+    private void showImagePreview(ImageItem imageItem, Image image) {
+        previewImageView.setImage(image);
+        
+        String info = String.format("%s\n尺寸: %.0f × %.0f\n大小: %s",
+            imageItem.getFileName(),
+            image.getWidth(),
+            image.getHeight(),
+            imageItem.getFormattedFileSize()
+        );
+        previewStatusLabel.setText(info);
+    }
+    
     @FXML
     private void handleImportImage() {
         FileChooser fileChooser = new FileChooser();
@@ -418,23 +430,26 @@ public class MainController implements Initializable {
     }
 
     private void loadImageAsync(ImageItem imageItem) {
+        loadingItems.add(imageItem);
         Task<Image> loadTask = new Task<Image>() {
             @Override
             protected Image call() throws Exception {
-                return ImageUtils.loadImage(imageItem.getFile());
+                // 加载结果放入共用缓存，图片项本身不持有像素
+                return imageItem.loadImage();
             }
             
             @Override
             protected void succeeded() {
                 Image image = getValue();
                 Platform.runLater(() -> {
-                    imageItem.setImage(image);
+                    loadingItems.remove(imageItem);
                     imageItem.setStatus("已加载");
                     
                     // 如果这是当前选中的项目，更新预览
                     ImageItem selectedItem = imageListView.getSelectionModel().getSelectedItem();
                     if (selectedItem == imageItem) {
-                        loadImagePreview(imageItem);
+                        // 直接使用加载结果，不依赖它仍在缓存中
+                        showImagePreview(imageItem, image);
                     }
                 });
             }
@@ -442,6 +457,7 @@ public class MainController implements Initializable {
             @Override
             protected void failed() {
                 Platform.runLater(() -> {
+                    loadingItems.remove(imageItem);
                     imageItem.setStatus("加载失败");
                     showAlert("错误", "无法加载图片: " + imageItem.getFileName(), 
                              getException().getMessage());
@@ -0,0 +1,143 @@
+package com.photowatermark.export;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行批量导出
+ * 输出文件名由调用方预先确定，各任务互不依赖，因此结果与线程数无关
+ */
+public class BatchExporter {
+
+    private final ImageExporter exporter;
+    private final int workerCount;
+    private final BatchMetrics metrics;
+
+    /**
+     * 统计记录到进程内共用的 BatchMetrics，并通过JMX发布
+     */
+    public BatchExporter(ImageExporter exporter, int workerCount) {
+        this(exporter, workerCount, BatchMetrics.shared());
+    }
+
+    public BatchExporter(ImageExporter exporter, int workerCount, BatchMetrics metrics) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("线程数必须大于0: " + workerCount);
+        }
+        this.exporter = exporter;
+        this.workerCount = workerCount;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 默认线程数：可用的处理器核心数
+     */
+    public static int defaultWorkerCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * 执行批量导出，阻塞直到所有任务完成
+     */
+    public Result export(List<Job> jobs) throws InterruptedException {
+        int threads = Math.min(workerCount, Math.max(1, jobs.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ExportThreadFactory());
+        AtomicInteger startedJobs = new AtomicInteger();
+        metrics.batchStarted(jobs.size(), threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                futures.add(pool.submit(() -> {
+                    startedJobs.incrementAndGet();
+                    metrics.taskStarted();
+                    boolean success = false;
+                    try {
+                        exporter.exportFile(job.getSource(), job.getOutput(), metrics);
+                        success = true;
+                    } finally {
+                        metrics.taskFinished(success, job.getSource().length(), success ? job.getOutput().length() : 0);
+                    }
+                    return null;
+                }));
+            }
+
+            // 按提交顺序收集结果，保证错误信息的顺序稳定
+            Result result = new Result();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    result.successCount++;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    result.failCount++;
+                    result.errorMessages.add("文件 " + jobs.get(i).getSource().getName() + ": " + cause.getMessage());
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+            metrics.batchFinished(jobs.size() - startedJobs.get());
+        }
+    }
+
+    /**
+     * 单个导出任务：源文件及其输出文件
+     */
+    public static final class Job {
+        private final File source;
+        private final File output;
+
+        public Job(File source, File output) {
+            this.source = source;
+            this.output = output;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+    }
+
+    /**
+     * 批量导出结果
+     */
+    public static final class Result {
+        private int successCount;
+        private int failCount;
+        private final List<String> errorMessages = new ArrayList<>();
+
+        public int getSuccessCount() {
+            return successCount;
+        }
+
+        public int getFailCount() {
+            return failCount;
+        }
+
+        public List<String> getErrorMessages() {
+            return Collections.unmodifiableList(errorMessages);
+        }
+    }
+
+    private static class ExportThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "batch-export-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.photowatermark.export;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量导出的分阶段统计
+ * 导出线程只做无锁的累加；进程内的所有批量导出默认共用一个实例，
+ * 注册为 com.photowatermark:type=BatchExport
+ */
+public class BatchMetrics implements BatchMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.photowatermark:type=BatchExport";
+
+    /**
+     * 单张图片导出的阶段
+     * 分块导出时解码、合成和编码交错进行，整体计入编码阶段
+     */
+    public enum Stage {
+        DECODE, RENDER, ENCODE, WRITE
+    }
+
+    private static final BatchMetrics SHARED = new BatchMetrics();
+    private static boolean registered;
+
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final LongAdder imagesCompleted = new LongAdder();
+    private final LongAdder imagesFailed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final AtomicLong batchesStarted = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger runningBatches = new AtomicInteger();
+    private volatile int workerCount;
+
+    // 吞吐量的计算区间：当前批次的开始时间，批次结束后固定为结束时间
+    private volatile long rateStartNanos;
+    private volatile long rateEndNanos;
+    private volatile long rateStartImages;
+    private volatile long rateStartBytes;
+
+    public BatchMetrics() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 进程内共用的实例，首次调用时注册到平台 MBeanServer；注册失败不影响导出
+     */
+    public static synchronized BatchMetrics shared() {
+        if (!registered) {
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(SHARED, name);
+                }
+            } catch (JMException | RuntimeException e) {
+                System.err.println("无法注册批量导出统计: " + e.getMessage());
+            }
+        }
+        return SHARED;
+    }
+
+    /**
+     * 记录某一阶段的耗时，返回当前时间，便于连续计时
+     */
+    public long record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()].add(now - startNanos);
+        return now;
+    }
+
+    /**
+     * 记录单独测得的阶段耗时
+     */
+    void add(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    void batchStarted(int jobCount, int workers) {
+        batchesStarted.incrementAndGet();
+        workerCount = workers;
+        queueDepth.addAndGet(jobCount);
+        if (runningBatches.getAndIncrement() == 0) {
+            rateStartImages = imagesCompleted.sum();
+            rateStartBytes = bytesRead.sum();
+            rateEndNanos = 0;
+            rateStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 取消等未开始就结束的任务从队列中移除
+     */
+    void batchFinished(int unstartedJobs) {
+        queueDepth.addAndGet(-unstartedJobs);
+        if (runningBatches.decrementAndGet() == 0) {
+            rateEndNanos = System.nanoTime();
+        }
+    }
+
+    void taskStarted() {
+        queueDepth.decrementAndGet();
+        activeWorkers.incrementAndGet();
+    }
+
+    void taskFinished(boolean success, long sourceBytes, long outputBytes) {
+        activeWorkers.decrementAndGet();
+        if (success) {
+            imagesCompleted.increment();
+            bytesRead.add(sourceBytes);
+            bytesWritten.add(outputBytes);
+        } else {
+            imagesFailed.increment();
+        }
+    }
+
+    @Override
+    public long getImagesCompleted() {
+        return imagesCompleted.sum();
+    }
+
+    @Override
+    public long getImagesFailed() {
+        return imagesFailed.sum();
+    }
+
+    @Override
+    public long getBatchesStarted() {
+        return batchesStarted.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    @Override
+    public long getDecodeTimeMillis() {
+        return stageMillis(Stage.DECODE);
+    }
+
+    @Override
+    public long getRenderTimeMillis() {
+        return stageMillis(Stage.RENDER);
+    }
+
+    @Override
+    public long getEncodeTimeMillis() {
+        return stageMillis(Stage.ENCODE);
+    }
+
+    @Override
+    public long getWriteTimeMillis() {
+        return stageMillis(Stage.WRITE);
+    }
+
+    @Override
+    public double getAverageDecodeMillis() {
+        return averageMillis(Stage.DECODE);
+    }
+
+    @Override
+    public double getAverageRenderMillis() {
+        return averageMillis(Stage.RENDER);
+    }
+
+    @Override
+    public double getAverageEncodeMillis() {
+        return averageMillis(Stage.ENCODE);
+    }
+
+    @Override
+    public double getAverageWriteMillis() {
+        return averageMillis(Stage.WRITE);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public double getImagesPerSecond() {
+        double seconds = rateSeconds();
+        return seconds > 0 ? (imagesCompleted.sum() - rateStartImages) / seconds : 0;
+    }
+
+    @Override
+    public double getMegabytesPerSecond() {
+        double seconds = rateSeconds();
+        return seconds > 0 ? (bytesRead.sum() - rateStartBytes) / (1024.0 * 1024.0) / seconds : 0;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : stageNanos) {
+            adder.reset();
+        }
+        imagesCompleted.reset();
+        imagesFailed.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        batchesStarted.set(0);
+        rateStartImages = 0;
+        rateStartBytes = 0;
+        rateStartNanos = runningBatches.get() > 0 ? System.nanoTime() : 0;
+        rateEndNanos = 0;
+    }
+
+    private long stageMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()].sum());
+    }
+
+    private double averageMillis(Stage stage) {
+        long images = imagesCompleted.sum() + imagesFailed.sum();
+        return images > 0 ? stageNanos[stage.ordinal()].sum() / 1_000_000.0 / images : 0;
+    }
+
+    private double rateSeconds() {
+        long start = rateStartNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = rateEndNanos != 0 ? rateEndNanos : System.nanoTime();
+        return (end - start) / 1_000_000_000.0;
+    }
+}
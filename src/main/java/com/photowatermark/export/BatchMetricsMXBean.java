@@ -0,0 +1,64 @@
+package com.photowatermark.export;
+
+/**
+ * 批量导出的运行统计，通过JMX发布，可在 JConsole/VisualVM 中实时查看
+ * 各阶段耗时为所有线程累计的时间，平均值按处理过的图片数（含失败）计算
+ */
+public interface BatchMetricsMXBean {
+
+    long getImagesCompleted();
+
+    long getImagesFailed();
+
+    long getBatchesStarted();
+
+    /**
+     * 已提交但还没有线程开始处理的图片数
+     */
+    int getQueueDepth();
+
+    /**
+     * 正在处理图片的线程数
+     */
+    int getActiveWorkers();
+
+    /**
+     * 最近一次批量导出配置的线程数
+     */
+    int getWorkerCount();
+
+    long getDecodeTimeMillis();
+
+    long getRenderTimeMillis();
+
+    long getEncodeTimeMillis();
+
+    long getWriteTimeMillis();
+
+    double getAverageDecodeMillis();
+
+    double getAverageRenderMillis();
+
+    double getAverageEncodeMillis();
+
+    double getAverageWriteMillis();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * 当前（或最近一次）批量导出的吞吐量，按开始到现在（或结束）的时间计算
+     */
+    double getImagesPerSecond();
+
+    /**
+     * 当前（或最近一次）批量导出读取源文件的吞吐量
+     */
+    double getMegabytesPerSecond();
+
+    /**
+     * 清零所有统计
+     */
+    void reset();
+}
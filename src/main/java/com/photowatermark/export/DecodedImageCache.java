@@ -0,0 +1,99 @@
+package com.photowatermark.export;
+
+import com.photowatermark.cache.ImageCache;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * 解码后的原图缓存，由预览、单张导出和批量导出共用
+ * 按栅格数据的字节数计入预算，超出时淘汰最久未用的图片；文件被修改后自动重新解码。
+ * 缓存中的图片会被多处同时使用，取出后不得修改
+ */
+public class DecodedImageCache {
+
+    // 通过系统属性配置预算（MB），未配置时为最大堆的四分之一
+    public static final String BUDGET_PROPERTY = "photowatermark.decodedImageCacheMB";
+
+    private final ImageCache<Key, BufferedImage> cache;
+
+    public DecodedImageCache(long maxBytes) {
+        this.cache = new ImageCache<>(maxBytes, DecodedImageCache::rasterBytes);
+    }
+
+    /**
+     * 按系统属性或默认值创建
+     */
+    public static DecodedImageCache withDefaultBudget() {
+        long defaultMegabytes = Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+        long megabytes = Long.getLong(BUDGET_PROPERTY, defaultMegabytes);
+        return new DecodedImageCache(Math.max(0, megabytes) * 1024 * 1024);
+    }
+
+    /**
+     * 读取解码后的图片，格式不受支持时返回 null（与 ImageIO.read 一致）
+     */
+    public BufferedImage read(File file) throws IOException {
+        return cache.get(Key.of(file), () -> ImageCodecs.read(file));
+    }
+
+    public void invalidate(File file) {
+        cache.invalidate(Key.of(file));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        cache.setMaxBytes(maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return cache.getMaxBytes();
+    }
+
+    public long getUsedBytes() {
+        return cache.getUsedBytes();
+    }
+
+    private static long rasterBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * 路径加修改时间和大小，文件被覆盖后不会命中旧的解码结果
+     */
+    private static final class Key {
+        final String path;
+        final long lastModified;
+        final long length;
+
+        private Key(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        static Key of(File file) {
+            return new Key(file.getAbsolutePath(), file.lastModified(), file.length());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return lastModified == other.lastModified && length == other.length && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, length);
+        }
+    }
+}
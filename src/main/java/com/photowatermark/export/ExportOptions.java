@@ -0,0 +1,71 @@
+package com.photowatermark.export;
+
+/**
+ * 导出选项
+ */
+public class ExportOptions {
+
+    /**
+     * 单张图片解码像素默认允许占用的内存（字节）
+     */
+    public static final long DEFAULT_TILE_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private String format = "JPEG";
+    private float jpegQuality = 0.85f;
+    private boolean jpegRegionReencode;
+    private boolean tiledProcessing;
+    private long tileMemoryBudget = DEFAULT_TILE_MEMORY_BUDGET;
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /**
+     * JPEG压缩质量（0.0-1.0）
+     */
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public void setJpegQuality(float jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * JPEG导出为JPEG时是否只重新编码水印覆盖的区域，其余部分保留原始压缩数据（此时不使用 jpegQuality）
+     */
+    public boolean isJpegRegionReencode() {
+        return jpegRegionReencode;
+    }
+
+    public void setJpegRegionReencode(boolean jpegRegionReencode) {
+        this.jpegRegionReencode = jpegRegionReencode;
+    }
+
+    /**
+     * 解码后超出内存预算的图片是否分条带读取、添加水印并写出
+     * 基线JPEG只解码一遍；PNG等顺序格式每条都要从头解码，耗时较长但不会整幅解码
+     */
+    public boolean isTiledProcessing() {
+        return tiledProcessing;
+    }
+
+    public void setTiledProcessing(boolean tiledProcessing) {
+        this.tiledProcessing = tiledProcessing;
+    }
+
+    /**
+     * 单张图片解码像素允许占用的内存（字节），分条带处理时也用来决定条带高度
+     */
+    public long getTileMemoryBudget() {
+        return tileMemoryBudget;
+    }
+
+    public void setTileMemoryBudget(long tileMemoryBudget) {
+        this.tileMemoryBudget = tileMemoryBudget;
+    }
+}
@@ -0,0 +1,231 @@
+package com.photowatermark.export;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 按线程复用的图片读写器
+ * 每个线程为每种格式保留一个 ImageReader/ImageWriter，用完后 reset，省去每张图片的服务查找和编解码器初始化；
+ * JPEG写入参数按质量预先配置
+ */
+public final class ImageCodecs {
+
+    private static final ThreadLocal<Map<String, ImageReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, PooledWriter>> WRITERS = ThreadLocal.withInitial(HashMap::new);
+
+    private ImageCodecs() {
+    }
+
+    /**
+     * 解码图片，与 ImageIO.read 一致：格式不受支持时返回 null
+     */
+    public static BufferedImage read(File file) throws IOException {
+        return read(file, 0);
+    }
+
+    /**
+     * 隔行隔列采样解码，结果的长边不小于 minSize，用于缩略图和预览，避免解码出完整分辨率的像素
+     * minSize 不大于0时完整解码
+     */
+    public static BufferedImage readSubsampled(File file, int minSize) throws IOException {
+        return read(file, minSize);
+    }
+
+    /**
+     * 只读取文件头中的图片尺寸，不解码像素；格式不受支持时返回 null
+     */
+    public static Dimension readSize(File file) throws IOException {
+        try (ImageInputStream input = new FileImageInputStream(file)) {
+            String format = detectFormat(input);
+            ImageReader reader = format == null ? null : pooledReader(format);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                reader.setInput(input, true, true);
+                Dimension size = new Dimension(reader.getWidth(0), reader.getHeight(0));
+                reader.reset();
+                return size;
+            } catch (IOException | RuntimeException e) {
+                discardReader(format, reader);
+                throw e;
+            }
+        }
+    }
+
+    private static BufferedImage read(File file, int minSize) throws IOException {
+        try (ImageInputStream input = new FileImageInputStream(file)) {
+            String format = detectFormat(input);
+            if (format == null) {
+                // 不认识的文件头交给 ImageIO 按注册的插件逐个尝试
+                return ImageIO.read(file);
+            }
+
+            ImageReader reader = pooledReader(format);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (minSize > 0) {
+                    int longSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                    int step = Math.max(1, longSide / minSize);
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                reader.reset();
+                return image;
+            } catch (IOException | RuntimeException e) {
+                // 出错后的解码器状态不可信，不再复用
+                discardReader(format, reader);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 按格式写出图片，JPEG使用指定的压缩质量
+     */
+    public static void write(BufferedImage image, File outputFile, String format, float jpegQuality) throws IOException {
+        // FileImageOutputStream 不会截断已有文件，需要先清空
+        try (RandomAccessFile file = new RandomAccessFile(outputFile, "rw")) {
+            file.setLength(0);
+            write(image, file, format, jpegQuality);
+        }
+    }
+
+    /**
+     * 按格式把图片写入已打开的文件，写完后关闭 file
+     * 编码器边编码边写入，整个输出不会在内存中保留一份
+     */
+    static void write(BufferedImage image, RandomAccessFile file, String format, float jpegQuality) throws IOException {
+        String key = format.toUpperCase();
+        PooledWriter pooled = pooledWriter(key);
+        if (pooled == null || !pooled.writer.getOriginatingProvider().canEncodeImage(image)) {
+            throw new IOException("不支持的输出格式: " + format);
+        }
+
+        try (ImageOutputStream output = new FileImageOutputStream(file)) {
+            pooled.writer.setOutput(output);
+            pooled.writer.write(null, new IIOImage(image, null, null), pooled.param(jpegQuality));
+            pooled.writer.reset();
+        } catch (IOException | RuntimeException e) {
+            discardWriter(key, pooled);
+            throw e;
+        }
+    }
+
+    private static ImageReader pooledReader(String format) {
+        Map<String, ImageReader> readers = READERS.get();
+        ImageReader reader = readers.get(format);
+        if (reader == null) {
+            Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName(format);
+            if (!it.hasNext()) {
+                return null;
+            }
+            reader = it.next();
+            readers.put(format, reader);
+        }
+        return reader;
+    }
+
+    private static PooledWriter pooledWriter(String format) {
+        Map<String, PooledWriter> writers = WRITERS.get();
+        PooledWriter pooled = writers.get(format);
+        if (pooled == null) {
+            Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(format);
+            if (!it.hasNext()) {
+                return null;
+            }
+            pooled = new PooledWriter(it.next(), "JPEG".equals(format));
+            writers.put(format, pooled);
+        }
+        return pooled;
+    }
+
+    private static void discardReader(String format, ImageReader reader) {
+        READERS.get().remove(format);
+        reader.dispose();
+    }
+
+    private static void discardWriter(String format, PooledWriter pooled) {
+        WRITERS.get().remove(format);
+        pooled.writer.dispose();
+    }
+
+    // 根据文件头识别格式，读取后回到流的开头
+    private static String detectFormat(ImageInputStream input) throws IOException {
+        byte[] header = new byte[4];
+        input.mark();
+        int count = input.read(header);
+        input.reset();
+        if (count < 4) {
+            return null;
+        }
+
+        int b0 = header[0] & 0xFF;
+        int b1 = header[1] & 0xFF;
+        int b2 = header[2] & 0xFF;
+        int b3 = header[3] & 0xFF;
+        if (b0 == 0xFF && b1 == 0xD8) {
+            return "JPEG";
+        }
+        if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+            return "PNG";
+        }
+        if (b0 == 'G' && b1 == 'I' && b2 == 'F') {
+            return "GIF";
+        }
+        if (b0 == 'B' && b1 == 'M') {
+            return "BMP";
+        }
+        if ((b0 == 'I' && b1 == 'I' && b2 == 42 && b3 == 0) || (b0 == 'M' && b1 == 'M' && b2 == 0 && b3 == 42)) {
+            return "TIFF";
+        }
+        return null;
+    }
+
+    /**
+     * 写入器及其预先配置的写入参数
+     */
+    private static final class PooledWriter {
+        final ImageWriter writer;
+        private final boolean jpeg;
+        private ImageWriteParam param;
+        private float paramQuality = -1;
+
+        PooledWriter(ImageWriter writer, boolean jpeg) {
+            this.writer = writer;
+            this.jpeg = jpeg;
+        }
+
+        ImageWriteParam param(float jpegQuality) {
+            if (param == null) {
+                param = writer.getDefaultWriteParam();
+            }
+            if (jpeg && paramQuality != jpegQuality) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                paramQuality = jpegQuality;
+            }
+            return param;
+        }
+    }
+}
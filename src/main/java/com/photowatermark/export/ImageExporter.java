@@ -0,0 +1,204 @@
+package com.photowatermark.export;
+
+import com.photowatermark.jpeg.JpegRegionTranscoder;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * 单张图片导出器：解码、添加水印、编码写出
+ * 所有字段在构造后不再改变，同一实例可被多个导出线程共享
+ */
+public class ImageExporter {
+
+    private final WatermarkRenderer renderer;
+    private final WatermarkSettings settings;
+    private final String format;
+    private final float jpegQuality;
+    private final boolean jpegRegionReencode;
+    private final TiledImageExporter tiledExporter;
+    private final DecodedImageCache decodedImageCache;
+
+    public ImageExporter(WatermarkRenderer renderer, WatermarkSettings settings, ExportOptions options) {
+        this(renderer, settings, options, null);
+    }
+
+    /**
+     * decodedImageCache 不为 null 时从共用缓存读取原图，调整设置后重新导出不必再次解码
+     */
+    public ImageExporter(WatermarkRenderer renderer, WatermarkSettings settings, ExportOptions options,
+                         DecodedImageCache decodedImageCache) {
+        this.renderer = renderer;
+        this.settings = settings;
+        this.format = options.getFormat();
+        this.jpegQuality = options.getJpegQuality();
+        this.jpegRegionReencode = options.isJpegRegionReencode();
+        this.tiledExporter = options.isTiledProcessing()
+            ? new TiledImageExporter(renderer, settings, format, jpegQuality, options.getTileMemoryBudget())
+            : null;
+        this.decodedImageCache = decodedImageCache;
+    }
+
+    /**
+     * 读取源文件并导出带水印的图片
+     */
+    public void exportFile(File sourceFile, File outputFile) throws IOException {
+        exportFile(sourceFile, outputFile, null);
+    }
+
+    /**
+     * 读取源文件并导出带水印的图片，metrics 不为 null 时记录各阶段耗时
+     */
+    public void exportFile(File sourceFile, File outputFile, BatchMetrics metrics) throws IOException {
+        if (tryJpegRegionReencode(sourceFile, outputFile, metrics)) {
+            return;
+        }
+        // 超大图片不整幅解码
+        long start = System.nanoTime();
+        if (tiledExporter != null && tiledExporter.export(sourceFile, outputFile)) {
+            record(metrics, BatchMetrics.Stage.ENCODE, start);
+            return;
+        }
+
+        BufferedImage watermarkedImage;
+        if (decodedImageCache != null) {
+            BufferedImage image = decodedImageCache.read(sourceFile);
+            if (image == null) {
+                throw new IOException("不支持的图片格式: " + sourceFile.getName());
+            }
+            start = record(metrics, BatchMetrics.Stage.DECODE, start);
+            // 缓存中的图片是共用的，合成到副本上
+            watermarkedImage = renderer.render(image, settings);
+        } else {
+            BufferedImage image = ImageCodecs.read(sourceFile);
+            if (image == null) {
+                throw new IOException("不支持的图片格式: " + sourceFile.getName());
+            }
+            start = record(metrics, BatchMetrics.Stage.DECODE, start);
+            // 解码得到的图片只在这里使用，可以直接在其上合成，避免整幅图片的复制
+            watermarkedImage = renderer.renderInPlace(image, settings);
+        }
+        start = record(metrics, BatchMetrics.Stage.RENDER, start);
+
+        if (metrics == null) {
+            writeImage(watermarkedImage, outputFile, format, jpegQuality);
+            return;
+        }
+        // 边编码边写盘，写盘耗时单独累计，其余计入编码
+        TimedFile file = new TimedFile(outputFile);
+        try {
+            ImageCodecs.write(watermarkedImage, file, format, jpegQuality);
+        } finally {
+            file.close();
+        }
+        recordEncodeAndWrite(metrics, start, file);
+    }
+
+    /**
+     * 导出已解码的图片，传入的图片不会被修改
+     * 提供源文件时可使用JPEG局部重编码
+     */
+    public void export(File sourceFile, BufferedImage image, File outputFile) throws IOException {
+        if (sourceFile != null && tryJpegRegionReencode(sourceFile, outputFile, null)) {
+            return;
+        }
+        export(image, outputFile);
+    }
+
+    /**
+     * 为已解码的图片添加水印并导出，传入的图片不会被修改
+     */
+    public void export(BufferedImage image, File outputFile) throws IOException {
+        BufferedImage watermarkedImage = renderer.render(image, settings);
+        writeImage(watermarkedImage, outputFile, format, jpegQuality);
+    }
+
+    /**
+     * JPEG导出为JPEG时只重新编码水印覆盖的MCU
+     * 源文件不是支持的JPEG类型时返回 false，由调用方走完整解码流程
+     */
+    private boolean tryJpegRegionReencode(File sourceFile, File outputFile, BatchMetrics metrics) throws IOException {
+        if (!jpegRegionReencode || !"JPEG".equalsIgnoreCase(format) || !isJpegFileName(sourceFile)) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        JpegRegionTranscoder transcoder;
+        try {
+            transcoder = JpegRegionTranscoder.open(Files.readAllBytes(sourceFile.toPath()));
+            if (transcoder == null) {
+                return false;
+            }
+            start = record(metrics, BatchMetrics.Stage.DECODE, start);
+            int width = transcoder.getWidth();
+            int height = transcoder.getHeight();
+            Rectangle dirty = renderer.getWatermarkBounds(width, height, settings);
+            transcoder.updateRegion(dirty, g2d -> renderer.paint(g2d, width, height, settings));
+            start = record(metrics, BatchMetrics.Stage.RENDER, start);
+        } catch (IOException e) {
+            // 数据异常时交给 ImageIO 处理，它对截断等问题更宽容
+            return false;
+        }
+
+        if (metrics == null) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+                transcoder.writeTo(out);
+            }
+            return true;
+        }
+        TimedFile file = new TimedFile(outputFile);
+        try (OutputStream out = new BufferedOutputStream(file.asOutputStream())) {
+            transcoder.writeTo(out);
+        } finally {
+            file.close();
+        }
+        recordEncodeAndWrite(metrics, start, file);
+        return true;
+    }
+
+    // 从开始编码到现在的时间中，写盘部分计入 WRITE，其余计入 ENCODE
+    private static void recordEncodeAndWrite(BatchMetrics metrics, long start, TimedFile file) {
+        long total = System.nanoTime() - start;
+        long write = Math.min(file.getWriteNanos(), total);
+        metrics.add(BatchMetrics.Stage.ENCODE, total - write);
+        metrics.add(BatchMetrics.Stage.WRITE, write);
+    }
+
+    // 记录阶段耗时并返回当前时间；不统计时只返回当前时间
+    private static long record(BatchMetrics metrics, BatchMetrics.Stage stage, long start) {
+        return metrics != null ? metrics.record(stage, start) : System.nanoTime();
+    }
+
+    private static boolean isJpegFileName(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    /**
+     * 按格式写出图片，JPEG使用指定的压缩质量
+     * 读写器按线程复用，见 ImageCodecs
+     */
+    public static void writeImage(BufferedImage image, File outputFile, String format, float jpegQuality) throws IOException {
+        ImageCodecs.write(image, outputFile, format, jpegQuality);
+    }
+
+    public WatermarkSettings getSettings() {
+        return settings;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+}
@@ -0,0 +1,49 @@
+package com.photowatermark.export;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * 导出文件命名
+ */
+public final class OutputFiles {
+
+    private OutputFiles() {
+    }
+
+    /**
+     * 文件已存在或已被本次导出占用时，在文件名后添加数字后缀
+     * reservedFiles 为本次批量导出中已分配但尚未写出的文件
+     */
+    public static File uniqueFile(File originalFile, Set<File> reservedFiles) {
+        if (!originalFile.exists() && !reservedFiles.contains(originalFile)) {
+            return originalFile;
+        }
+
+        String directory = originalFile.getParent();
+        String fileName = originalFile.getName();
+
+        // 分离文件名和扩展名
+        String nameWithoutExt;
+        String extension;
+        int lastDotIndex = fileName.lastIndexOf('.');
+        if (lastDotIndex > 0) {
+            nameWithoutExt = fileName.substring(0, lastDotIndex);
+            extension = fileName.substring(lastDotIndex);
+        } else {
+            nameWithoutExt = fileName;
+            extension = "";
+        }
+
+        // 尝试添加数字后缀
+        int counter = 1;
+        File newFile;
+        do {
+            String newFileName = nameWithoutExt + "_" + counter + extension;
+            newFile = new File(directory, newFileName);
+            counter++;
+        } while (newFile.exists() || reservedFiles.contains(newFile));
+
+        return newFile;
+    }
+}
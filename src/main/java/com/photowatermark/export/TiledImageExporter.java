@@ -0,0 +1,361 @@
+package com.photowatermark.export;
+
+import com.photowatermark.jpeg.JpegRegionTranscoder;
+import com.photowatermark.jpeg.JpegStripEncoder;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * 分条带处理超大图片：逐条解码，只在与水印相交的条带上绘制，
+ * 再逐条交给编码器，像素占用的堆内存只与条带大小有关，与图片尺寸无关。
+ *
+ * 基线JPEG用自带的解码器从上到下只解码一遍，压缩数据通过内存映射读取，不占用堆内存；
+ * 其他格式按 setSourceRegion 逐条读取。按条带或图块存储的TIFF只解码相交的条带，
+ * PNG、渐进式JPEG等顺序格式每读一条都要从头解码，总耗时随条带数平方增长，但内存仍受控制
+ * （渐进式JPEG的解码器仍需保存整幅图片的系数）
+ */
+class TiledImageExporter {
+
+    private final WatermarkRenderer renderer;
+    private final WatermarkSettings settings;
+    private final String format;
+    private final float jpegQuality;
+    private final long memoryBudget;
+
+    TiledImageExporter(WatermarkRenderer renderer, WatermarkSettings settings,
+                       String format, float jpegQuality, long memoryBudget) {
+        this.renderer = renderer;
+        this.settings = settings;
+        this.format = format;
+        this.jpegQuality = jpegQuality;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * 图片解码后超出内存预算时分条带导出并返回 true；图片不大或无法识别时返回 false，由调用方整图处理
+     */
+    boolean export(File sourceFile, File outputFile) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile)) {
+            if (input == null) {
+                return false;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return false;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                // 按区域读取TIFF时需要在文件中来回查找，因此不能只向前查找
+                reader.setInput(input, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height * 4 <= memoryBudget) {
+                    return false;
+                }
+
+                StripReader stripReader = openStripReader(sourceFile, reader);
+                StripSource source = new StripSource(stripReader, width, height, stripHeight(width, height));
+                if ("JPEG".equalsIgnoreCase(format)) {
+                    writeJpeg(source, outputFile);
+                } else {
+                    writeWithImageIO(source, outputFile);
+                }
+                return true;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 基线JPEG只解码一遍，其他格式和自带解码器不支持的JPEG按区域读取
+    private StripReader openStripReader(File sourceFile, ImageReader reader) throws IOException {
+        String formatName = reader.getFormatName();
+        if ("jpeg".equalsIgnoreCase(formatName) || "jpg".equalsIgnoreCase(formatName)) {
+            JpegRegionTranscoder jpeg = openMapped(sourceFile);
+            if (jpeg != null) {
+                JpegRegionTranscoder.StripDecoder decoder = jpeg.stripDecoder();
+                return region -> {
+                    // 只能从上到下依次读取，写入器按顺序取条带
+                    if (region.y != decoder.getRowsRead()) {
+                        throw new IOException("条带必须按顺序读取");
+                    }
+                    return decoder.readRows(region.height);
+                };
+            }
+        }
+        return region -> {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(region);
+            return reader.read(0, param);
+        };
+    }
+
+    // 映射整个文件交给自带的解码器，超出单个映射的上限或不支持时返回 null
+    // 映射在通道关闭后仍然有效，随缓冲区被回收而解除
+    private static JpegRegionTranscoder openMapped(File sourceFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return JpegRegionTranscoder.open(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    // 解码结果和转换后的RGB条带同时存在，按两份计算；JPEG编码要求条带高度为16的倍数
+    private int stripHeight(int width, int height) {
+        long rows = memoryBudget / (2L * 4 * width);
+        int aligned = (int) Math.min(height, rows) / JpegStripEncoder.STRIP_ALIGNMENT * JpegStripEncoder.STRIP_ALIGNMENT;
+        return Math.max(JpegStripEncoder.STRIP_ALIGNMENT, aligned);
+    }
+
+    private void writeJpeg(StripSource source, File outputFile) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            JpegStripEncoder encoder = new JpegStripEncoder(out, source.width, source.height, jpegQuality);
+            for (int i = 0; i < source.stripCount; i++) {
+                encoder.writeStrip(source.readStrip(i));
+            }
+            encoder.finish();
+        }
+    }
+
+    private void writeWithImageIO(StripSource source, File outputFile) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("不支持的输出格式: " + format);
+        }
+
+        ImageWriter writer = writers.next();
+        try (FileOutputStream fos = new FileOutputStream(outputFile);
+             ImageOutputStream ios = ImageIO.createImageOutputStream(fos)) {
+            writer.setOutput(ios);
+            // PNG、TIFF写入器按行或按条带调用 getData(Rectangle)，不会一次取得整幅图片
+            writer.write(null, new IIOImage(new StripImage(source), null, null), writer.getDefaultWriteParam());
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 解码原图的一个条带
+     */
+    private interface StripReader {
+        BufferedImage read(Rectangle region) throws IOException;
+    }
+
+    /**
+     * 按条带解码并添加水印
+     */
+    private final class StripSource {
+        final StripReader reader;
+        final int width;
+        final int height;
+        final int stripHeight;
+        final int stripCount;
+        final Rectangle watermarkBounds;
+
+        StripSource(StripReader reader, int width, int height, int stripHeight) {
+            this.reader = reader;
+            this.width = width;
+            this.height = height;
+            this.stripHeight = stripHeight;
+            this.stripCount = (height + stripHeight - 1) / stripHeight;
+            this.watermarkBounds = renderer.getWatermarkBounds(width, height, settings);
+        }
+
+        BufferedImage readStrip(int index) throws IOException {
+            int top = index * stripHeight;
+            Rectangle region = new Rectangle(0, top, width, Math.min(stripHeight, height - top));
+            BufferedImage decoded = reader.read(region);
+
+            BufferedImage strip = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = strip.createGraphics();
+            g2d.drawImage(decoded, 0, 0, null);
+            if (watermarkBounds.intersects(region)) {
+                // 平移到整幅图片的坐标系，水印位置仍按完整尺寸计算
+                g2d.translate(0, -top);
+                renderer.paint(g2d, width, height, settings);
+            }
+            g2d.dispose();
+            return strip;
+        }
+    }
+
+    /**
+     * 以条带为图块的惰性图片，只缓存最近使用的一个条带
+     */
+    private static final class StripImage implements RenderedImage {
+        private final StripSource source;
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+        private int cachedIndex = -1;
+        private Raster cachedStrip;
+
+        StripImage(StripSource source) {
+            this.source = source;
+            BufferedImage prototype = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            this.colorModel = prototype.getColorModel();
+            this.sampleModel = colorModel.createCompatibleSampleModel(source.width, source.stripHeight);
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            if (tileY != cachedIndex) {
+                try {
+                    BufferedImage strip = source.readStrip(tileY);
+                    cachedStrip = strip.getRaster().createTranslatedChild(0, tileY * source.stripHeight);
+                    cachedIndex = tileY;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return cachedStrip;
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            Rectangle bounds = rect.intersection(new Rectangle(0, 0, source.width, source.height));
+            WritableRaster raster = Raster.createWritableRaster(
+                sampleModel.createCompatibleSampleModel(bounds.width, bounds.height), new Point(bounds.x, bounds.y));
+            int first = bounds.y / source.stripHeight;
+            int last = (bounds.y + bounds.height - 1) / source.stripHeight;
+            for (int i = first; i <= last; i++) {
+                raster.setRect(getTile(0, i));
+            }
+            return raster;
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(0, 0, source.width, source.height));
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            if (raster == null) {
+                return (WritableRaster) getData();
+            }
+            Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, source.width, source.height));
+            if (!bounds.isEmpty()) {
+                raster.setRect(getData(bounds));
+            }
+            return raster;
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return sampleModel;
+        }
+
+        @Override
+        public int getWidth() {
+            return source.width;
+        }
+
+        @Override
+        public int getHeight() {
+            return source.height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return source.stripCount;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return source.width;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return source.stripHeight;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+    }
+}
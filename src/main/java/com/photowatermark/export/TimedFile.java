@@ -0,0 +1,66 @@
+package com.photowatermark.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * 累计写盘耗时的输出文件
+ * 编码器边编码边写入，不在内存中保留整个输出；总耗时减去写盘耗时即为编码耗时
+ */
+final class TimedFile extends RandomAccessFile {
+
+    private long writeNanos;
+
+    /**
+     * 打开并清空输出文件
+     */
+    TimedFile(File file) throws IOException {
+        super(file, "rw");
+        setLength(0);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        super.write(b);
+        writeNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        super.write(b, off, len);
+        writeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * 到目前为止花在写盘上的时间
+     */
+    long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * 以输出流的形式写入本文件，调用方应在外面加缓冲
+     */
+    OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                TimedFile.this.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                TimedFile.this.write(b, off, len);
+            }
+        };
+    }
+}
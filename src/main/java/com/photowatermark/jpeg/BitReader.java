@@ -0,0 +1,92 @@
+package com.photowatermark.jpeg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 熵编码数据的位读取器，处理 0xFF00 字节填充和重启标记
+ */
+final class BitReader {
+
+    private final ByteBuffer data;
+    private int pos;
+    private int bitBuffer;
+    private int bitCount;
+    private boolean markerHit;
+
+    BitReader(ByteBuffer data, int pos) {
+        this.data = data;
+        this.pos = pos;
+    }
+
+    int readBit() {
+        if (bitCount == 0) {
+            fill();
+        }
+        bitCount--;
+        return (bitBuffer >>> bitCount) & 1;
+    }
+
+    int readBits(int n) {
+        int value = 0;
+        for (int i = 0; i < n; i++) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    /**
+     * 在重启间隔结束时丢弃剩余的填充位并跳过 RSTn 标记
+     */
+    void restart() throws IOException {
+        bitBuffer = 0;
+        bitCount = 0;
+        markerHit = false;
+        while (pos + 1 < data.limit() && (data.get(pos) & 0xFF) == 0xFF && (data.get(pos + 1) & 0xFF) == 0xFF) {
+            pos++;
+        }
+        if (pos + 1 >= data.limit() || (data.get(pos) & 0xFF) != 0xFF
+                || (data.get(pos + 1) & 0xFF) < 0xD0 || (data.get(pos + 1) & 0xFF) > 0xD7) {
+            throw new IOException("JPEG数据损坏：缺少重启标记");
+        }
+        pos += 2;
+    }
+
+    /**
+     * 熵编码数据之后下一个标记的位置
+     */
+    int nextMarkerPosition() {
+        int p = pos;
+        while (p + 1 < data.limit()) {
+            if ((data.get(p) & 0xFF) == 0xFF) {
+                int next = data.get(p + 1) & 0xFF;
+                if (next != 0 && next != 0xFF && (next < 0xD0 || next > 0xD7)) {
+                    return p;
+                }
+            }
+            p++;
+        }
+        return data.limit();
+    }
+
+    private void fill() {
+        int b = 0;
+        if (!markerHit && pos < data.limit()) {
+            b = data.get(pos) & 0xFF;
+            if (b == 0xFF) {
+                int next = pos + 1 < data.limit() ? data.get(pos + 1) & 0xFF : 0xD9;
+                if (next == 0) {
+                    pos += 2;
+                } else {
+                    // 遇到标记后不再前进，后续读到的都是0
+                    markerHit = true;
+                    b = 0;
+                }
+            } else {
+                pos++;
+            }
+        }
+        bitBuffer = b;
+        bitCount = 8;
+    }
+}
@@ -0,0 +1,50 @@
+package com.photowatermark.jpeg;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 熵编码数据的位写入器，输出 0xFF 时自动插入填充字节
+ */
+final class BitWriter {
+
+    private final ByteArrayOutputStream out;
+    private long bitBuffer;
+    private int bitCount;
+
+    BitWriter(ByteArrayOutputStream out) {
+        this.out = out;
+    }
+
+    void writeBits(int code, int size) {
+        bitBuffer = (bitBuffer << size) | (code & ((1L << size) - 1));
+        bitCount += size;
+        while (bitCount >= 8) {
+            int b = (int) (bitBuffer >>> (bitCount - 8)) & 0xFF;
+            out.write(b);
+            if (b == 0xFF) {
+                out.write(0);
+            }
+            bitCount -= 8;
+        }
+        bitBuffer &= (1L << bitCount) - 1;
+    }
+
+    /**
+     * 用1填充到字节边界
+     */
+    void flush() {
+        if (bitCount > 0) {
+            int pad = 8 - bitCount;
+            writeBits((1 << pad) - 1, pad);
+        }
+    }
+
+    /**
+     * 写入重启标记 RSTn
+     */
+    void writeRestart(int n) {
+        flush();
+        out.write(0xFF);
+        out.write(0xD0 + (n & 7));
+    }
+}
@@ -0,0 +1,62 @@
+package com.photowatermark.jpeg;
+
+/**
+ * 单个8x8块的Huffman编码
+ */
+final class BlockCoder {
+
+    private BlockCoder() {
+    }
+
+    /**
+     * 编码一个块（Z字形顺序的量化系数），表中缺少所需符号时返回 false
+     */
+    static boolean encodeBlock(BitWriter out, HuffmanTable dc, HuffmanTable ac,
+                               short[] coefficients, int prediction) {
+        int diff = coefficients[0] - prediction;
+        int size = bitLength(diff);
+        if (!dc.canEncode(size)) {
+            return false;
+        }
+        dc.encode(out, size);
+        out.writeBits(diff < 0 ? diff - 1 : diff, size);
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = coefficients[k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                if (!ac.canEncode(0xF0)) {
+                    return false;
+                }
+                ac.encode(out, 0xF0);
+                run -= 16;
+            }
+            size = bitLength(value);
+            int symbol = (run << 4) | size;
+            if (!ac.canEncode(symbol)) {
+                return false;
+            }
+            ac.encode(out, symbol);
+            out.writeBits(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+        if (run > 0) {
+            if (!ac.canEncode(0x00)) {
+                return false;
+            }
+            ac.encode(out, 0x00);
+        }
+        return true;
+    }
+
+    /**
+     * 数值的幅度类别（所需位数）
+     */
+    static int bitLength(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+}
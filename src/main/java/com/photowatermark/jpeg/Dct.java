@@ -0,0 +1,115 @@
+package com.photowatermark.jpeg;
+
+/**
+ * 8x8 浮点离散余弦变换及 Z 字形扫描顺序
+ */
+final class Dct {
+
+    /**
+     * Z字形扫描位置 k 对应的自然顺序下标
+     */
+    static final int[] ZIGZAG = {
+         0,  1,  8, 16,  9,  2,  3, 10,
+        17, 24, 32, 25, 18, 11,  4,  5,
+        12, 19, 26, 33, 40, 48, 41, 34,
+        27, 20, 13,  6,  7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36,
+        29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46,
+        53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // BASIS[u][x] = C(u)/2 * cos((2x+1)uπ/16)
+    private static final double[][] BASIS = new double[8][8];
+
+    static {
+        for (int u = 0; u < 8; u++) {
+            double c = u == 0 ? Math.sqrt(0.5) : 1.0;
+            for (int x = 0; x < 8; x++) {
+                BASIS[u][x] = c / 2 * Math.cos((2 * x + 1) * u * Math.PI / 16);
+            }
+        }
+    }
+
+    private Dct() {
+    }
+
+    /**
+     * 反量化并做逆变换，输出0-255范围的样本值（自然顺序）
+     */
+    static void inverse(short[] zigzagCoefficients, int[] quantTable, float[] samples) {
+        double[] coefficients = new double[64];
+        boolean acZero = true;
+        for (int k = 0; k < 64; k++) {
+            coefficients[ZIGZAG[k]] = zigzagCoefficients[k] * quantTable[k];
+            acZero &= k == 0 || zigzagCoefficients[k] == 0;
+        }
+        if (acZero) {
+            // 只有直流分量的块（压缩后最常见）各样本相同，省去两次一维变换
+            double value = BASIS[0][0] * (BASIS[0][0] * coefficients[0]) + 128;
+            java.util.Arrays.fill(samples, (float) Math.max(0, Math.min(255, value)));
+            return;
+        }
+
+        double[] temp = new double[64];
+        // 先对列做一维逆变换，再对行；全为0的列变换结果也为0，跳过
+        for (int u = 0; u < 8; u++) {
+            boolean columnZero = true;
+            for (int v = 0; v < 8 && columnZero; v++) {
+                columnZero = coefficients[v * 8 + u] == 0;
+            }
+            if (columnZero) {
+                continue;
+            }
+            for (int y = 0; y < 8; y++) {
+                double sum = 0;
+                for (int v = 0; v < 8; v++) {
+                    sum += BASIS[v][y] * coefficients[v * 8 + u];
+                }
+                temp[y * 8 + u] = sum;
+            }
+        }
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                double sum = 0;
+                for (int u = 0; u < 8; u++) {
+                    sum += BASIS[u][x] * temp[y * 8 + u];
+                }
+                double value = sum + 128;
+                samples[y * 8 + x] = (float) Math.max(0, Math.min(255, value));
+            }
+        }
+    }
+
+    /**
+     * 正变换并量化，输出Z字形顺序的系数
+     */
+    static void forward(float[] samples, int[] quantTable, short[] zigzagCoefficients) {
+        double[] temp = new double[64];
+        for (int y = 0; y < 8; y++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int x = 0; x < 8; x++) {
+                    sum += BASIS[u][x] * (samples[y * 8 + x] - 128);
+                }
+                temp[y * 8 + u] = sum;
+            }
+        }
+        double[] coefficients = new double[64];
+        for (int u = 0; u < 8; u++) {
+            for (int v = 0; v < 8; v++) {
+                double sum = 0;
+                for (int y = 0; y < 8; y++) {
+                    sum += BASIS[v][y] * temp[y * 8 + u];
+                }
+                coefficients[v * 8 + u] = sum;
+            }
+        }
+
+        for (int k = 0; k < 64; k++) {
+            int limit = k == 0 ? 2047 : 1023;
+            long q = Math.round(coefficients[ZIGZAG[k]] / quantTable[k]);
+            zigzagCoefficients[k] = (short) Math.max(-limit, Math.min(limit, q));
+        }
+    }
+}
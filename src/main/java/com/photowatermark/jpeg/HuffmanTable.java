@@ -0,0 +1,193 @@
+package com.photowatermark.jpeg;
+
+import javax.imageio.plugins.jpeg.JPEGHuffmanTable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * JPEG Huffman表，同时提供解码和编码所需的查找数据
+ */
+final class HuffmanTable {
+
+    private final int[] bits;     // bits[1..16]：各码长的码字数
+    private final int[] values;
+
+    private final int[] maxCode = new int[18];
+    private final int[] valueOffset = new int[17];
+    private final int[] codes = new int[256];
+    private final int[] codeSizes = new int[256];
+
+    HuffmanTable(int[] bits, int[] values) {
+        this.bits = bits;
+        this.values = values;
+
+        // 按 JPEG 规范附录C生成规范码字
+        int code = 0;
+        int k = 0;
+        for (int length = 1; length <= 16; length++) {
+            valueOffset[length] = k - code;
+            for (int i = 0; i < bits[length]; i++) {
+                codes[values[k]] = code;
+                codeSizes[values[k]] = length;
+                code++;
+                k++;
+            }
+            maxCode[length] = bits[length] > 0 ? code - 1 : -1;
+            code <<= 1;
+        }
+        maxCode[17] = Integer.MAX_VALUE;
+    }
+
+    /**
+     * 由 ImageIO 提供的表（如 JPEG 规范附录K中的标准表）创建
+     */
+    static HuffmanTable from(JPEGHuffmanTable table) {
+        short[] lengths = table.getLengths();
+        short[] symbols = table.getValues();
+        int[] bits = new int[17];
+        for (int i = 0; i < 16; i++) {
+            bits[i + 1] = i < lengths.length ? lengths[i] : 0;
+        }
+        int[] values = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            values[i] = symbols[i] & 0xFF;
+        }
+        return new HuffmanTable(bits, values);
+    }
+
+    int decode(BitReader in) throws IOException {
+        int code = 0;
+        for (int length = 1; length <= 16; length++) {
+            code = (code << 1) | in.readBit();
+            if (code <= maxCode[length]) {
+                return values[valueOffset[length] + code];
+            }
+        }
+        throw new IOException("JPEG数据损坏：无效的Huffman码");
+    }
+
+    /**
+     * 表中是否包含该符号
+     */
+    boolean canEncode(int symbol) {
+        return codeSizes[symbol] > 0;
+    }
+
+    void encode(BitWriter out, int symbol) {
+        out.writeBits(codes[symbol], codeSizes[symbol]);
+    }
+
+    /**
+     * 写出 DHT 段中该表的部分（不含类别/编号字节）
+     */
+    void writeTo(ByteArrayOutputStream out) {
+        for (int length = 1; length <= 16; length++) {
+            out.write(bits[length]);
+        }
+        for (int value : values) {
+            out.write(value);
+        }
+    }
+
+    int length() {
+        return 16 + values.length;
+    }
+
+    /**
+     * 根据符号频率生成最优Huffman表（码长不超过16位），算法见 JPEG 规范附录K.2
+     */
+    static HuffmanTable optimal(long[] symbolFrequencies) {
+        long[] freq = new long[257];
+        System.arraycopy(symbolFrequencies, 0, freq, 0, 256);
+        // 保留一个码点，保证不会出现全1的码字
+        freq[256] = 1;
+
+        int[] codeSize = new int[257];
+        int[] others = new int[257];
+        java.util.Arrays.fill(others, -1);
+
+        while (true) {
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (freq[i] != 0 && freq[i] <= v) {
+                    v = freq[i];
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                    v = freq[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+
+            freq[c1] += freq[c2];
+            freq[c2] = 0;
+
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+
+        int[] lengthCounts = new int[33];
+        for (int i = 0; i <= 256; i++) {
+            if (codeSize[i] > 0) {
+                lengthCounts[codeSize[i]]++;
+            }
+        }
+
+        // 把超过16位的码长调整到16位以内
+        for (int i = 32; i > 16; i--) {
+            while (lengthCounts[i] > 0) {
+                int j = i - 2;
+                while (lengthCounts[j] == 0) {
+                    j--;
+                }
+                lengthCounts[i] -= 2;
+                lengthCounts[i - 1]++;
+                lengthCounts[j + 1] += 2;
+                lengthCounts[j]--;
+            }
+        }
+
+        // 去掉保留码点
+        int longest = 16;
+        while (lengthCounts[longest] == 0) {
+            longest--;
+        }
+        lengthCounts[longest]--;
+
+        int[] bits = new int[17];
+        System.arraycopy(lengthCounts, 1, bits, 1, 16);
+
+        int count = 0;
+        for (int i = 1; i <= 16; i++) {
+            count += bits[i];
+        }
+        int[] values = new int[count];
+        int k = 0;
+        for (int length = 1; length <= 32 && k < count; length++) {
+            for (int symbol = 0; symbol < 256 && k < count; symbol++) {
+                if (codeSize[symbol] == length) {
+                    values[k++] = symbol;
+                }
+            }
+        }
+        return new HuffmanTable(bits, values);
+    }
+}
@@ -0,0 +1,789 @@
+package com.photowatermark.jpeg;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * JPEG局部重编码
+ * 只对水印覆盖的MCU做逆变换、绘制、正变换和量化，其余块的量化系数原样保留（类似 jpegtran），
+ * 因此不会对整幅图片产生二次压缩损失，也不需要完整解码像素。
+ *
+ * 支持8位、Huffman编码、单次扫描的基线/扩展顺序JPEG（YCbCr三分量），
+ * 其他类型（渐进式、算术编码、灰度、CMYK等）由 open 返回 null，调用方应退回完整解码。
+ * 输出只包含主图，原文件EOI之后附加的数据（MPF副图、预览图等）会被丢弃。
+ */
+public final class JpegRegionTranscoder {
+
+    private final ByteBuffer data;
+    private final List<byte[]> segments = new ArrayList<>();
+    private final int[][] quantTables = new int[4][];
+    private final HuffmanTable[] dcTables = new HuffmanTable[4];
+    private final HuffmanTable[] acTables = new HuffmanTable[4];
+
+    private int width;
+    private int height;
+    private Component[] components;
+    private int hMax;
+    private int vMax;
+    private int mcusX;
+    private int mcusY;
+    private int restartInterval;
+    private int scanStart;
+    private boolean adobeRgb;
+
+    // 被替换的块：每个分量按 块行*每行块数+块列 索引
+    private final List<Map<Integer, short[]>> replacedBlocks = new ArrayList<>();
+
+    private JpegRegionTranscoder(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * 解析JPEG文件头，不支持的JPEG类型返回 null
+     */
+    public static JpegRegionTranscoder open(byte[] data) throws IOException {
+        return open(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * 从缓冲区的当前位置到 limit 解析JPEG文件，可以传入内存映射的文件，压缩数据不必读入堆内存；
+     * 之后一直按需读取缓冲区，使用期间不得修改其内容
+     */
+    public static JpegRegionTranscoder open(ByteBuffer data) throws IOException {
+        JpegRegionTranscoder transcoder = new JpegRegionTranscoder(data.slice());
+        try {
+            return transcoder.parse() ? transcoder : null;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("JPEG数据损坏", e);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 重新绘制给定区域
+     * 区域会扩展到MCU边界，painter 收到的画布坐标与整幅图片一致
+     */
+    public void updateRegion(Rectangle region, Consumer<Graphics2D> painter) throws IOException {
+        Rectangle r = region.intersection(new Rectangle(0, 0, width, height));
+        if (r.isEmpty()) {
+            return;
+        }
+
+        int mcuWidth = 8 * hMax;
+        int mcuHeight = 8 * vMax;
+        int mx0 = r.x / mcuWidth;
+        int mx1 = (r.x + r.width - 1) / mcuWidth;
+        int my0 = r.y / mcuHeight;
+        int my1 = (r.y + r.height - 1) / mcuHeight;
+
+        // 解码覆盖区域内各分量的原始系数
+        short[][][] original = new short[components.length][][];
+        for (int ci = 0; ci < components.length; ci++) {
+            Component c = components[ci];
+            original[ci] = new short[(my1 - my0 + 1) * c.v * (mx1 - mx0 + 1) * c.h][];
+        }
+        try {
+            decodeScan((ci, blockRow, blockCol, coefficients) -> {
+                Component c = components[ci];
+                int row = blockRow - my0 * c.v;
+                int col = blockCol - mx0 * c.h;
+                int cols = (mx1 - mx0 + 1) * c.h;
+                if (row >= 0 && col >= 0 && col < cols && row < (my1 - my0 + 1) * c.v) {
+                    original[ci][row * cols + col] = coefficients.clone();
+                }
+            }, my1);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("JPEG数据损坏", e);
+        }
+
+        // 逆变换并上采样到全分辨率平面
+        int planeWidth = (mx1 - mx0 + 1) * mcuWidth;
+        int planeHeight = (my1 - my0 + 1) * mcuHeight;
+        float[][] planes = new float[components.length][planeWidth * planeHeight];
+        float[] samples = new float[64];
+        for (int ci = 0; ci < components.length; ci++) {
+            Component c = components[ci];
+            int sx = hMax / c.h;
+            int sy = vMax / c.v;
+            int cols = (mx1 - mx0 + 1) * c.h;
+            short[][] blocks = original[ci];
+            for (int i = 0; i < blocks.length; i++) {
+                Dct.inverse(blocks[i], quantTables[c.quantTable], samples);
+                upsample(samples, planes[ci], planeWidth, (i % cols) * 8 * sx, (i / cols) * 8 * sy, sx, sy);
+            }
+        }
+
+        // 转换为RGB并绘制水印
+        int originX = mx0 * mcuWidth;
+        int originY = my0 * mcuHeight;
+        int visibleWidth = Math.min(planeWidth, width - originX);
+        int visibleHeight = Math.min(planeHeight, height - originY);
+        int[] before = new int[visibleWidth * visibleHeight];
+        for (int y = 0; y < visibleHeight; y++) {
+            for (int x = 0; x < visibleWidth; x++) {
+                int p = y * planeWidth + x;
+                before[y * visibleWidth + x] = toRgb(planes[0][p], planes[1][p], planes[2][p]);
+            }
+        }
+        BufferedImage canvas = new BufferedImage(visibleWidth, visibleHeight, BufferedImage.TYPE_INT_RGB);
+        canvas.setRGB(0, 0, visibleWidth, visibleHeight, before, 0, visibleWidth);
+        Graphics2D g2d = canvas.createGraphics();
+        g2d.translate(-originX, -originY);
+        painter.accept(g2d);
+        g2d.dispose();
+        int[] after = canvas.getRGB(0, 0, visibleWidth, visibleHeight, null, 0, visibleWidth);
+
+        // 只有像素真正改变的位置才写回，其余保持解码值不变
+        boolean[] changed = new boolean[planeWidth * planeHeight];
+        boolean anyChanged = false;
+        for (int y = 0; y < visibleHeight; y++) {
+            for (int x = 0; x < visibleWidth; x++) {
+                int rgb = after[y * visibleWidth + x];
+                if (rgb != before[y * visibleWidth + x]) {
+                    int p = y * planeWidth + x;
+                    int red = (rgb >> 16) & 0xFF;
+                    int green = (rgb >> 8) & 0xFF;
+                    int blue = rgb & 0xFF;
+                    planes[0][p] = (float) (0.299 * red + 0.587 * green + 0.114 * blue);
+                    planes[1][p] = (float) (-0.168736 * red - 0.331264 * green + 0.5 * blue + 128);
+                    planes[2][p] = (float) (0.5 * red - 0.418688 * green - 0.081312 * blue + 128);
+                    changed[p] = true;
+                    anyChanged = true;
+                }
+            }
+        }
+        if (!anyChanged) {
+            return;
+        }
+
+        // 对有变化的块下采样、正变换并量化
+        for (int ci = 0; ci < components.length; ci++) {
+            Component c = components[ci];
+            int sx = hMax / c.h;
+            int sy = vMax / c.v;
+            int cols = (mx1 - mx0 + 1) * c.h;
+            for (int i = 0; i < original[ci].length; i++) {
+                int baseX = (i % cols) * 8 * sx;
+                int baseY = (i / cols) * 8 * sy;
+                if (!anyChanged(changed, planeWidth, baseX, baseY, 8 * sx, 8 * sy)) {
+                    continue;
+                }
+                for (int y = 0; y < 8; y++) {
+                    for (int x = 0; x < 8; x++) {
+                        float sum = 0;
+                        for (int dy = 0; dy < sy; dy++) {
+                            int rowOffset = (baseY + y * sy + dy) * planeWidth + baseX + x * sx;
+                            for (int dx = 0; dx < sx; dx++) {
+                                sum += planes[ci][rowOffset + dx];
+                            }
+                        }
+                        samples[y * 8 + x] = sum / (sx * sy);
+                    }
+                }
+                short[] coefficients = new short[64];
+                Dct.forward(samples, quantTables[c.quantTable], coefficients);
+                int blockRow = my0 * c.v + i / cols;
+                int blockCol = mx0 * c.h + i % cols;
+                replacedBlocks.get(ci).put(blockRow * c.blocksPerLine + blockCol, coefficients);
+            }
+        }
+    }
+
+    /**
+     * 写出新的JPEG文件
+     * 优先沿用原Huffman表；原表缺少新块需要的符号时，按统计重新生成最优表
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ByteArrayOutputStream entropy = new ByteArrayOutputStream(data.limit());
+        HuffmanTable[] dc = dcTables.clone();
+        HuffmanTable[] ac = acTables.clone();
+        try {
+            if (!encodeScan(new BitWriter(entropy), dc, ac)) {
+                long[][] dcFrequencies = new long[4][256];
+                long[][] acFrequencies = new long[4][256];
+                countSymbols(dcFrequencies, acFrequencies);
+                for (Component c : components) {
+                    dc[c.dcTable] = HuffmanTable.optimal(dcFrequencies[c.dcTable]);
+                    ac[c.acTable] = HuffmanTable.optimal(acFrequencies[c.acTable]);
+                }
+                entropy.reset();
+                encodeScan(new BitWriter(entropy), dc, ac);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("JPEG数据损坏", e);
+        }
+
+        out.write(0xFF);
+        out.write(0xD8);
+        for (byte[] segment : segments) {
+            out.write(segment);
+        }
+        writeHuffmanTables(out, dc, ac);
+        writeScanHeader(out);
+        entropy.writeTo(out);
+        out.write(0xFF);
+        out.write(0xD9);
+    }
+
+    /**
+     * 创建按顺序逐条解码整幅图片的解码器
+     * 解码的是原始系数，不包含 updateRegion 的修改
+     */
+    public StripDecoder stripDecoder() {
+        return new StripDecoder();
+    }
+
+    /**
+     * 从上到下逐条解码，整个扫描只解码一遍；每次只保留一个MCU行的样本，内存占用与图片高度无关。
+     * 色度按最近邻上采样，与 libjpeg 的插值相比彩色边缘略粗糙
+     */
+    public final class StripDecoder {
+        private final ScanDecoder scan = new ScanDecoder();
+        private final int mcuHeight = 8 * vMax;
+        private final int planeWidth = mcusX * 8 * hMax;
+        private final float[][] planes = new float[components.length][planeWidth * mcuHeight];
+        private final float[] samples = new float[64];
+        // 最近解码的MCU行转换后的RGB像素，以及其中已经交出的行数
+        private final int[] mcuRowPixels = new int[width * mcuHeight];
+        private int mcuRowAvailable;
+        private int mcuRowConsumed;
+        private int rowsRead;
+
+        private StripDecoder() {
+        }
+
+        /**
+         * 解码接下来的 rows 行
+         */
+        public BufferedImage readRows(int rows) throws IOException {
+            if (rows < 1 || rowsRead + rows > height) {
+                throw new IllegalArgumentException("行数超出图片范围");
+            }
+            BufferedImage strip = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+            try {
+                for (int y = 0; y < rows; ) {
+                    if (mcuRowConsumed == mcuRowAvailable) {
+                        decodeMcuRow();
+                    }
+                    int count = Math.min(rows - y, mcuRowAvailable - mcuRowConsumed);
+                    System.arraycopy(mcuRowPixels, mcuRowConsumed * width, pixels, y * width, count * width);
+                    mcuRowConsumed += count;
+                    y += count;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("JPEG数据损坏", e);
+            }
+            rowsRead += rows;
+            return strip;
+        }
+
+        public int getRowsRead() {
+            return rowsRead;
+        }
+
+        private void decodeMcuRow() throws IOException {
+            int top = scan.row * mcuHeight;
+            scan.decodeRow((ci, blockRow, blockCol, coefficients) -> {
+                Component c = components[ci];
+                int sx = hMax / c.h;
+                int sy = vMax / c.v;
+                Dct.inverse(coefficients, quantTables[c.quantTable], samples);
+                upsample(samples, planes[ci], planeWidth, blockCol * 8 * sx, (blockRow - scan.row * c.v) * 8 * sy, sx, sy);
+            });
+            mcuRowAvailable = Math.min(mcuHeight, height - top);
+            mcuRowConsumed = 0;
+            for (int y = 0; y < mcuRowAvailable; y++) {
+                for (int x = 0; x < width; x++) {
+                    int p = y * planeWidth + x;
+                    mcuRowPixels[y * width + x] = toRgb(planes[0][p], planes[1][p], planes[2][p]);
+                }
+            }
+        }
+    }
+
+    // ---- 解析 ----
+
+    private boolean parse() throws IOException {
+        if (data.limit() < 4 || (data.get(0) & 0xFF) != 0xFF || (data.get(1) & 0xFF) != 0xD8) {
+            throw new IOException("不是JPEG文件");
+        }
+
+        boolean frameSeen = false;
+        int pos = 2;
+        while (true) {
+            if (pos + 1 >= data.limit() || (data.get(pos) & 0xFF) != 0xFF) {
+                throw new IOException("JPEG数据损坏：无效的标记");
+            }
+            int marker = data.get(pos + 1) & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xD9) {
+                // 没有扫描数据
+                throw new IOException("JPEG数据损坏：缺少图像数据");
+            }
+
+            int length = readUnsignedShort(pos + 2);
+            int payload = pos + 4;
+            int end = pos + 2 + length;
+            byte[] raw = new byte[end - pos];
+            data.get(pos, raw);
+
+            switch (marker) {
+                case 0xC0:
+                case 0xC1:
+                    if (frameSeen || !parseFrame(payload)) {
+                        return false;
+                    }
+                    frameSeen = true;
+                    segments.add(raw);
+                    break;
+                case 0xC4:
+                    parseHuffmanTables(payload, end);
+                    break;
+                case 0xDB:
+                    parseQuantTables(payload, end);
+                    segments.add(raw);
+                    break;
+                case 0xDD:
+                    restartInterval = readUnsignedShort(payload);
+                    segments.add(raw);
+                    break;
+                case 0xDA:
+                    if (!frameSeen || !parseScanHeader(payload)) {
+                        return false;
+                    }
+                    scanStart = end;
+                    return validateScan();
+                case 0xEE:
+                    parseAdobe(payload, end);
+                    segments.add(raw);
+                    break;
+                default:
+                    if (marker >= 0xC2 && marker <= 0xCF) {
+                        // 渐进式、无损、分层或算术编码
+                        return false;
+                    }
+                    if (marker == 0xE2 && isMpfSegment(payload, end)) {
+                        // 只写出主图，原EOI之后的副图和预览图不保留，指向它们的MPF索引一并去掉
+                        break;
+                    }
+                    segments.add(raw);
+                    break;
+            }
+            pos = end;
+        }
+    }
+
+    /**
+     * APP2 段是否为多图格式（MPF）索引
+     */
+    private boolean isMpfSegment(int payload, int end) {
+        return end - payload >= 4 && data.get(payload) == 'M' && data.get(payload + 1) == 'P'
+            && data.get(payload + 2) == 'F' && data.get(payload + 3) == 0;
+    }
+
+    private boolean parseFrame(int p) {
+        int precision = data.get(p) & 0xFF;
+        height = readUnsignedShort(p + 1);
+        width = readUnsignedShort(p + 3);
+        int count = data.get(p + 5) & 0xFF;
+        if (precision != 8 || height == 0 || width == 0 || count != 3) {
+            return false;
+        }
+
+        components = new Component[count];
+        for (int i = 0; i < count; i++) {
+            int offset = p + 6 + i * 3;
+            int sampling = data.get(offset + 1) & 0xFF;
+            Component c = new Component(data.get(offset) & 0xFF, sampling >> 4, sampling & 0x0F, data.get(offset + 2) & 0x03);
+            if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4) {
+                return false;
+            }
+            components[i] = c;
+            hMax = Math.max(hMax, c.h);
+            vMax = Math.max(vMax, c.v);
+            replacedBlocks.add(new HashMap<>());
+        }
+        for (Component c : components) {
+            if (hMax % c.h != 0 || vMax % c.v != 0) {
+                return false;
+            }
+        }
+
+        mcusX = (width + 8 * hMax - 1) / (8 * hMax);
+        mcusY = (height + 8 * vMax - 1) / (8 * vMax);
+        for (Component c : components) {
+            c.blocksPerLine = mcusX * c.h;
+        }
+        return true;
+    }
+
+    private boolean parseScanHeader(int p) {
+        int count = data.get(p) & 0xFF;
+        if (count != components.length) {
+            // 非交错的多次扫描
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int id = data.get(p + 1 + i * 2) & 0xFF;
+            int tables = data.get(p + 2 + i * 2) & 0xFF;
+            // 扫描中的分量顺序需与帧头一致，分量0/1/2依次为 Y/Cb/Cr
+            Component c = components[i];
+            if (c.id != id) {
+                return false;
+            }
+            c.dcTable = tables >> 4;
+            c.acTable = tables & 0x0F;
+        }
+        int spectralStart = data.get(p + 1 + count * 2) & 0xFF;
+        int spectralEnd = data.get(p + 2 + count * 2) & 0xFF;
+        int approximation = data.get(p + 3 + count * 2) & 0xFF;
+        return spectralStart == 0 && spectralEnd == 63 && approximation == 0;
+    }
+
+    private boolean validateScan() {
+        if (adobeRgb) {
+            return false;
+        }
+        for (Component c : components) {
+            if (c.dcTable > 3 || c.acTable > 3 || quantTables[c.quantTable] == null
+                    || dcTables[c.dcTable] == null || acTables[c.acTable] == null) {
+                return false;
+            }
+        }
+        // 分量编号为 'R','G','B' 时按RGB存储
+        return !(components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B');
+    }
+
+    private void parseHuffmanTables(int p, int end) {
+        while (p < end) {
+            int info = data.get(p) & 0xFF;
+            int[] bits = new int[17];
+            int count = 0;
+            for (int i = 1; i <= 16; i++) {
+                bits[i] = data.get(p + i) & 0xFF;
+                count += bits[i];
+            }
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = data.get(p + 17 + i) & 0xFF;
+            }
+            HuffmanTable table = new HuffmanTable(bits, values);
+            if ((info >> 4) == 0) {
+                dcTables[info & 0x03] = table;
+            } else {
+                acTables[info & 0x03] = table;
+            }
+            p += 17 + count;
+        }
+    }
+
+    private void parseQuantTables(int p, int end) {
+        while (p < end) {
+            int info = data.get(p) & 0xFF;
+            boolean sixteenBit = (info >> 4) != 0;
+            int[] table = new int[64];
+            for (int k = 0; k < 64; k++) {
+                table[k] = sixteenBit ? readUnsignedShort(p + 1 + k * 2) : data.get(p + 1 + k) & 0xFF;
+            }
+            quantTables[info & 0x03] = table;
+            p += 1 + (sixteenBit ? 128 : 64);
+        }
+    }
+
+    private void parseAdobe(int p, int end) {
+        if (end - p >= 12 && data.get(p) == 'A' && data.get(p + 1) == 'd' && data.get(p + 2) == 'o'
+                && data.get(p + 3) == 'b' && data.get(p + 4) == 'e') {
+            adobeRgb = data.get(p + 11) == 0;
+        }
+    }
+
+    private int readUnsignedShort(int p) {
+        return ((data.get(p) & 0xFF) << 8) | (data.get(p + 1) & 0xFF);
+    }
+
+    // ---- 熵编码数据 ----
+
+    private interface BlockVisitor {
+        void visit(int component, int blockRow, int blockCol, short[] coefficients) throws IOException;
+    }
+
+    /**
+     * 按MCU顺序解码扫描数据，解码到 lastMcuRow 行为止
+     */
+    private void decodeScan(BlockVisitor visitor, int lastMcuRow) throws IOException {
+        ScanDecoder scan = new ScanDecoder();
+        while (scan.row <= lastMcuRow) {
+            scan.decodeRow(visitor);
+        }
+    }
+
+    /**
+     * 扫描数据的解码状态，每次解码一个MCU行
+     */
+    private final class ScanDecoder {
+        private final BitReader in = new BitReader(data, scanStart);
+        private final int[] predictions = new int[components.length];
+        private final short[] coefficients = new short[64];
+        private int mcu;
+        // 下一个要解码的MCU行
+        private int row;
+
+        void decodeRow(BlockVisitor visitor) throws IOException {
+            for (int mx = 0; mx < mcusX; mx++) {
+                if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                    in.restart();
+                    java.util.Arrays.fill(predictions, 0);
+                }
+                for (int ci = 0; ci < components.length; ci++) {
+                    Component c = components[ci];
+                    for (int v = 0; v < c.v; v++) {
+                        for (int h = 0; h < c.h; h++) {
+                            predictions[ci] = decodeBlock(in, c, predictions[ci], coefficients);
+                            visitor.visit(ci, row * c.v + v, mx * c.h + h, coefficients);
+                        }
+                    }
+                }
+                mcu++;
+            }
+            row++;
+        }
+    }
+
+    private int decodeBlock(BitReader in, Component c, int prediction, short[] coefficients) throws IOException {
+        java.util.Arrays.fill(coefficients, (short) 0);
+        int category = dcTables[c.dcTable].decode(in);
+        int dc = prediction + extend(in.readBits(category), category);
+        coefficients[0] = (short) dc;
+
+        HuffmanTable ac = acTables[c.acTable];
+        for (int k = 1; k < 64; ) {
+            int symbol = ac.decode(in);
+            int run = symbol >> 4;
+            int size = symbol & 0x0F;
+            if (size == 0) {
+                if (run != 15) {
+                    break;
+                }
+                k += 16;
+                continue;
+            }
+            k += run;
+            if (k > 63) {
+                throw new IOException("JPEG数据损坏：系数越界");
+            }
+            coefficients[k++] = (short) extend(in.readBits(size), size);
+        }
+        return dc;
+    }
+
+    private static int extend(int value, int size) {
+        return size == 0 ? 0 : value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+
+    /**
+     * 用给定的表重新编码整个扫描，原表缺少所需符号时返回 false
+     */
+    private boolean encodeScan(BitWriter out, HuffmanTable[] dc, HuffmanTable[] ac) throws IOException {
+        boolean[] complete = {true};
+        int[] predictions = new int[components.length];
+        int[] restartCount = {0};
+        int[] lastMcu = {-1};
+        decodeBlocksWithReplacements((mcu, ci, coefficients) -> {
+            if (!complete[0]) {
+                return;
+            }
+            if (mcu != lastMcu[0]) {
+                if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                    out.writeRestart(restartCount[0]++);
+                    java.util.Arrays.fill(predictions, 0);
+                }
+                lastMcu[0] = mcu;
+            }
+            Component c = components[ci];
+            if (!BlockCoder.encodeBlock(out, dc[c.dcTable], ac[c.acTable], coefficients, predictions[ci])) {
+                complete[0] = false;
+            }
+            predictions[ci] = coefficients[0];
+        });
+        out.flush();
+        return complete[0];
+    }
+
+    /**
+     * 统计替换后的全部块所需的符号频率
+     */
+    private void countSymbols(long[][] dcFrequencies, long[][] acFrequencies) throws IOException {
+        int[] predictions = new int[components.length];
+        int[] lastMcu = {-1};
+        decodeBlocksWithReplacements((mcu, ci, coefficients) -> {
+            if (mcu != lastMcu[0]) {
+                if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                    java.util.Arrays.fill(predictions, 0);
+                }
+                lastMcu[0] = mcu;
+            }
+            Component c = components[ci];
+            int diff = coefficients[0] - predictions[ci];
+            dcFrequencies[c.dcTable][BlockCoder.bitLength(diff)]++;
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = coefficients[k];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    acFrequencies[c.acTable][0xF0]++;
+                    run -= 16;
+                }
+                acFrequencies[c.acTable][(run << 4) | BlockCoder.bitLength(value)]++;
+                run = 0;
+            }
+            if (run > 0) {
+                acFrequencies[c.acTable][0x00]++;
+            }
+            predictions[ci] = coefficients[0];
+        });
+    }
+
+    private interface McuBlockVisitor {
+        void visit(int mcu, int component, short[] coefficients) throws IOException;
+    }
+
+    private void decodeBlocksWithReplacements(McuBlockVisitor visitor) throws IOException {
+        int[] mcuIndex = {0};
+        int[] blocksInMcu = {0};
+        int blocksPerMcu = 0;
+        for (Component c : components) {
+            blocksPerMcu += c.h * c.v;
+        }
+        int totalBlocksPerMcu = blocksPerMcu;
+        decodeScan((ci, blockRow, blockCol, coefficients) -> {
+            Map<Integer, short[]> replaced = replacedBlocks.get(ci);
+            short[] replacement = replaced.isEmpty() ? null : replaced.get(blockRow * components[ci].blocksPerLine + blockCol);
+            visitor.visit(mcuIndex[0], ci, replacement != null ? replacement : coefficients);
+            if (++blocksInMcu[0] == totalBlocksPerMcu) {
+                blocksInMcu[0] = 0;
+                mcuIndex[0]++;
+            }
+        }, mcusY - 1);
+    }
+
+    // ---- 输出 ----
+
+    private void writeHuffmanTables(OutputStream out, HuffmanTable[] dc, HuffmanTable[] ac) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        boolean[] dcWritten = new boolean[4];
+        boolean[] acWritten = new boolean[4];
+        for (Component c : components) {
+            if (!dcWritten[c.dcTable]) {
+                payload.write(c.dcTable);
+                dc[c.dcTable].writeTo(payload);
+                dcWritten[c.dcTable] = true;
+            }
+            if (!acWritten[c.acTable]) {
+                payload.write(0x10 | c.acTable);
+                ac[c.acTable].writeTo(payload);
+                acWritten[c.acTable] = true;
+            }
+        }
+        writeSegment(out, 0xC4, payload.toByteArray());
+    }
+
+    private void writeScanHeader(OutputStream out) throws IOException {
+        byte[] payload = new byte[4 + components.length * 2];
+        payload[0] = (byte) components.length;
+        for (int i = 0; i < components.length; i++) {
+            payload[1 + i * 2] = (byte) components[i].id;
+            payload[2 + i * 2] = (byte) ((components[i].dcTable << 4) | components[i].acTable);
+        }
+        payload[1 + components.length * 2] = 0;
+        payload[2 + components.length * 2] = 63;
+        payload[3 + components.length * 2] = 0;
+        writeSegment(out, 0xDA, payload);
+    }
+
+    private static void writeSegment(OutputStream out, int marker, byte[] payload) throws IOException {
+        out.write(0xFF);
+        out.write(marker);
+        int length = payload.length + 2;
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(payload);
+    }
+
+    // 将一个块的样本按采样比例复制到全分辨率平面
+    private static void upsample(float[] samples, float[] plane, int planeWidth, int baseX, int baseY, int sx, int sy) {
+        for (int y = 0; y < 8 * sy; y++) {
+            int rowOffset = (baseY + y) * planeWidth + baseX;
+            for (int x = 0; x < 8 * sx; x++) {
+                plane[rowOffset + x] = samples[(y / sy) * 8 + x / sx];
+            }
+        }
+    }
+
+    private static int toRgb(float y, float cb, float cr) {
+        int red = clamp(Math.round(y + 1.402f * (cr - 128)));
+        int green = clamp(Math.round(y - 0.344136f * (cb - 128) - 0.714136f * (cr - 128)));
+        int blue = clamp(Math.round(y + 1.772f * (cb - 128)));
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static boolean anyChanged(boolean[] changed, int stride, int x0, int y0, int w, int h) {
+        for (int y = y0; y < y0 + h; y++) {
+            for (int x = x0; x < x0 + w; x++) {
+                if (changed[y * stride + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Component {
+        final int id;
+        final int h;
+        final int v;
+        final int quantTable;
+        int dcTable;
+        int acTable;
+        int blocksPerLine;
+
+        Component(int id, int h, int v, int quantTable) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantTable = quantTable;
+        }
+    }
+}
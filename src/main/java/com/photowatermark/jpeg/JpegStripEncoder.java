@@ -0,0 +1,243 @@
+package com.photowatermark.jpeg;
+
+import javax.imageio.plugins.jpeg.JPEGHuffmanTable;
+import javax.imageio.plugins.jpeg.JPEGQTable;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 按条带流式写出的基线JPEG编码器（YCbCr 4:2:0，标准Huffman表）
+ * ImageIO 的JPEG写入器总是先取得整幅图片的像素，这里每次只需要一条带的像素，内存占用与图片高度无关
+ */
+public final class JpegStripEncoder {
+
+    /**
+     * 条带高度必须是该值的整数倍（最后一条除外）
+     */
+    public static final int STRIP_ALIGNMENT = 16;
+
+    private static final int MAX_DIMENSION = 65535;
+
+    private static final byte[] JFIF_HEADER = {
+        'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0
+    };
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final int mcuColumns;
+
+    private final int[] lumaQuant;
+    private final int[] chromaQuant;
+    private final HuffmanTable lumaDc = HuffmanTable.from(JPEGHuffmanTable.StdDCLuminance);
+    private final HuffmanTable lumaAc = HuffmanTable.from(JPEGHuffmanTable.StdACLuminance);
+    private final HuffmanTable chromaDc = HuffmanTable.from(JPEGHuffmanTable.StdDCChrominance);
+    private final HuffmanTable chromaAc = HuffmanTable.from(JPEGHuffmanTable.StdACChrominance);
+
+    private final ByteArrayOutputStream entropy = new ByteArrayOutputStream();
+    private final BitWriter bits = new BitWriter(entropy);
+
+    // 一个MCU行的全分辨率样本，宽度补齐到16的倍数
+    private final float[] yPlane;
+    private final float[] cbPlane;
+    private final float[] crPlane;
+    private final int[] rowBuffer;
+
+    private final float[] block = new float[64];
+    private final short[] coefficients = new short[64];
+    private int predictionY;
+    private int predictionCb;
+    private int predictionCr;
+    private int rowsWritten;
+
+    /**
+     * 创建编码器并写出文件头，quality 与 ImageWriteParam 的压缩质量含义一致（0.0-1.0）
+     */
+    public JpegStripEncoder(OutputStream out, int width, int height, float quality) throws IOException {
+        if (width < 1 || height < 1 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IOException("JPEG不支持该图片尺寸: " + width + "x" + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.mcuColumns = (width + 15) / 16;
+
+        int paddedWidth = mcuColumns * 16;
+        this.yPlane = new float[paddedWidth * 16];
+        this.cbPlane = new float[paddedWidth * 16];
+        this.crPlane = new float[paddedWidth * 16];
+        this.rowBuffer = new int[width];
+
+        float scale = linearQuality(quality);
+        this.lumaQuant = toZigzag(JPEGQTable.K1Luminance.getScaledInstance(scale, true).getTable());
+        this.chromaQuant = toZigzag(JPEGQTable.K2Chrominance.getScaledInstance(scale, true).getTable());
+
+        writeHeaders();
+    }
+
+    /**
+     * 编码下一条带，条带宽度必须等于图片宽度
+     */
+    public void writeStrip(BufferedImage strip) throws IOException {
+        int stripHeight = strip.getHeight();
+        if (strip.getWidth() != width || stripHeight < 1 || rowsWritten + stripHeight > height) {
+            throw new IllegalArgumentException("条带尺寸与图片不符");
+        }
+        if (rowsWritten % STRIP_ALIGNMENT != 0) {
+            throw new IllegalStateException("只有最后一条带的高度可以不是 " + STRIP_ALIGNMENT + " 的倍数");
+        }
+
+        for (int top = 0; top < stripHeight; top += 16) {
+            loadMcuRow(strip, top, Math.min(16, stripHeight - top));
+            encodeMcuRow();
+            entropy.writeTo(out);
+            entropy.reset();
+        }
+        rowsWritten += stripHeight;
+    }
+
+    /**
+     * 写出文件尾，所有行都写入后调用
+     */
+    public void finish() throws IOException {
+        if (rowsWritten != height) {
+            throw new IllegalStateException("还有 " + (height - rowsWritten) + " 行未写入");
+        }
+        bits.flush();
+        entropy.writeTo(out);
+        entropy.reset();
+        out.write(0xFF);
+        out.write(0xD9);
+        out.flush();
+    }
+
+    // 读取一个MCU行并转换为YCbCr，不足的行和列复制边缘像素
+    private void loadMcuRow(BufferedImage strip, int top, int rows) {
+        int paddedWidth = mcuColumns * 16;
+        for (int y = 0; y < 16; y++) {
+            if (y < rows) {
+                strip.getRGB(0, top + y, width, 1, rowBuffer, 0, width);
+            }
+            int offset = y * paddedWidth;
+            for (int x = 0; x < paddedWidth; x++) {
+                int rgb = rowBuffer[Math.min(x, width - 1)];
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                yPlane[offset + x] = 0.299f * r + 0.587f * g + 0.114f * b;
+                cbPlane[offset + x] = -0.168736f * r - 0.331264f * g + 0.5f * b + 128;
+                crPlane[offset + x] = 0.5f * r - 0.418688f * g - 0.081312f * b + 128;
+            }
+        }
+    }
+
+    private void encodeMcuRow() {
+        int paddedWidth = mcuColumns * 16;
+        for (int mcu = 0; mcu < mcuColumns; mcu++) {
+            int left = mcu * 16;
+            for (int by = 0; by < 2; by++) {
+                for (int bx = 0; bx < 2; bx++) {
+                    copyBlock(yPlane, paddedWidth, left + bx * 8, by * 8);
+                    predictionY = encodeBlock(lumaQuant, lumaDc, lumaAc, predictionY);
+                }
+            }
+            downsampleBlock(cbPlane, paddedWidth, left);
+            predictionCb = encodeBlock(chromaQuant, chromaDc, chromaAc, predictionCb);
+            downsampleBlock(crPlane, paddedWidth, left);
+            predictionCr = encodeBlock(chromaQuant, chromaDc, chromaAc, predictionCr);
+        }
+    }
+
+    private int encodeBlock(int[] quant, HuffmanTable dc, HuffmanTable ac, int prediction) {
+        Dct.forward(block, quant, coefficients);
+        // 标准表覆盖了基线JPEG的全部符号
+        BlockCoder.encodeBlock(bits, dc, ac, coefficients, prediction);
+        return coefficients[0];
+    }
+
+    private void copyBlock(float[] plane, int stride, int left, int top) {
+        for (int y = 0; y < 8; y++) {
+            System.arraycopy(plane, (top + y) * stride + left, block, y * 8, 8);
+        }
+    }
+
+    // 2x2平均得到色度块
+    private void downsampleBlock(float[] plane, int stride, int left) {
+        for (int y = 0; y < 8; y++) {
+            int row = y * 2 * stride + left;
+            for (int x = 0; x < 8; x++) {
+                int i = row + x * 2;
+                block[y * 8 + x] = (plane[i] + plane[i + 1] + plane[i + stride] + plane[i + stride + 1]) / 4;
+            }
+        }
+    }
+
+    private void writeHeaders() throws IOException {
+        out.write(0xFF);
+        out.write(0xD8);
+        writeSegment(0xE0, JFIF_HEADER);
+
+        byte[] dqt = new byte[2 * 65];
+        dqt[0] = 0;
+        dqt[65] = 1;
+        for (int k = 0; k < 64; k++) {
+            dqt[1 + k] = (byte) lumaQuant[k];
+            dqt[66 + k] = (byte) chromaQuant[k];
+        }
+        writeSegment(0xDB, dqt);
+
+        writeSegment(0xC0, new byte[] {
+            8,
+            (byte) (height >> 8), (byte) height,
+            (byte) (width >> 8), (byte) width,
+            3,
+            1, 0x22, 0,
+            2, 0x11, 1,
+            3, 0x11, 1
+        });
+
+        ByteArrayOutputStream dht = new ByteArrayOutputStream();
+        dht.write(0x00);
+        lumaDc.writeTo(dht);
+        dht.write(0x10);
+        lumaAc.writeTo(dht);
+        dht.write(0x01);
+        chromaDc.writeTo(dht);
+        dht.write(0x11);
+        chromaAc.writeTo(dht);
+        writeSegment(0xC4, dht.toByteArray());
+
+        writeSegment(0xDA, new byte[] {
+            3,
+            1, 0x00,
+            2, 0x11,
+            3, 0x11,
+            0, 63, 0
+        });
+    }
+
+    private void writeSegment(int marker, byte[] payload) throws IOException {
+        out.write(0xFF);
+        out.write(marker);
+        int length = payload.length + 2;
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(payload);
+    }
+
+    // 与 ImageIO JPEG写入器相同的质量换算
+    private static float linearQuality(float quality) {
+        quality = Math.max(0.01f, Math.min(1.0f, quality));
+        return quality < 0.5f ? 0.5f / quality : 2.0f - quality * 2.0f;
+    }
+
+    private static int[] toZigzag(int[] naturalOrder) {
+        int[] table = new int[64];
+        for (int k = 0; k < 64; k++) {
+            table[k] = naturalOrder[Dct.ZIGZAG[k]];
+        }
+        return table;
+    }
+}
@@ -0,0 +1,222 @@
+package com.photowatermark.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 并行递归扫描文件夹
+ * 每个子目录是一个 Fork/Join 任务，多个目录同时列举，适合网络存储等单次访问延迟高的场景；
+ * 找到的文件分批交给回调，不必等整个目录树扫描完成。符号链接指向的目录不进入，避免循环
+ */
+public class FolderScanner {
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+    private final Predicate<Path> filter;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    /**
+     * filter 按文件名判断是否需要该文件
+     */
+    public FolderScanner(Predicate<Path> filter) {
+        // 扫描主要在等待文件系统，线程数多于CPU核心数
+        this(filter, Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+            DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public FolderScanner(Predicate<Path> filter, int parallelism, int batchSize, long flushIntervalMillis) {
+        if (parallelism < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("线程数和批大小必须大于0");
+        }
+        this.filter = filter;
+        this.pool = new ForkJoinPool(parallelism);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+    }
+
+    /**
+     * 开始扫描，立即返回
+     * onBatch 在扫描线程中调用，每批至多 batchSize 个文件；距离上一批超过刷新间隔时不满一批也会交出。
+     * 扫描结束（包括被取消）后 completion 以找到的文件总数完成，此后不会再调用 onBatch
+     */
+    public Scan scan(List<Path> directories, Consumer<List<File>> onBatch) {
+        Scan scan = new Scan(onBatch);
+        pool.execute(new RootTask(directories, scan));
+        return scan;
+    }
+
+    /**
+     * 停止后台线程，进行中的扫描随之结束
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 一次扫描的句柄
+     */
+    public final class Scan {
+        private final Consumer<List<File>> onBatch;
+        private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+        private volatile boolean cancelled;
+
+        private List<File> pending = new ArrayList<>();
+        private int foundCount;
+        // 第一个文件立即交出，尽快显示结果
+        private long lastFlush = System.nanoTime() - flushIntervalNanos;
+
+        private Scan(Consumer<List<File>> onBatch) {
+            this.onBatch = onBatch;
+        }
+
+        /**
+         * 取消扫描，尚未交出的文件被丢弃
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public CompletableFuture<Integer> completion() {
+            return completion;
+        }
+
+        private void found(File file) {
+            List<File> batch;
+            synchronized (this) {
+                pending.add(file);
+                foundCount++;
+                batch = takeBatch(pending.size() >= batchSize);
+            }
+            deliver(batch);
+        }
+
+        // 目录处理完后检查是否到了刷新时间，目录树中长时间没有匹配的文件时已找到的文件也能及时交出
+        private void flushIfDue() {
+            List<File> batch;
+            synchronized (this) {
+                batch = takeBatch(false);
+            }
+            deliver(batch);
+        }
+
+        private void finish() {
+            List<File> batch;
+            int total;
+            synchronized (this) {
+                batch = takeBatch(true);
+                total = foundCount;
+            }
+            deliver(batch);
+            completion.complete(total);
+        }
+
+        // 需要交出时取走当前批次，调用方持有锁
+        private List<File> takeBatch(boolean force) {
+            long now = System.nanoTime();
+            if (pending.isEmpty() || (!force && now - lastFlush < flushIntervalNanos)) {
+                return null;
+            }
+            List<File> batch = pending;
+            pending = new ArrayList<>();
+            lastFlush = now;
+            return batch;
+        }
+
+        private void deliver(List<File> batch) {
+            if (batch != null && !cancelled) {
+                onBatch.accept(batch);
+            }
+        }
+    }
+
+    private final class RootTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> directories;
+        private final Scan scan;
+
+        RootTask(List<Path> directories, Scan scan) {
+            this.directories = directories;
+            this.scan = scan;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                List<DirectoryTask> tasks = new ArrayList<>();
+                for (Path directory : directories) {
+                    tasks.add(new DirectoryTask(directory, scan));
+                }
+                invokeAll(tasks);
+                scan.finish();
+            } catch (RuntimeException e) {
+                scan.completion.completeExceptionally(e);
+            }
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final Scan scan;
+
+        DirectoryTask(Path directory, Scan scan) {
+            this.directory = directory;
+            this.scan = scan;
+        }
+
+        @Override
+        protected void compute() {
+            if (scan.cancelled) {
+                return;
+            }
+
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (scan.cancelled) {
+                        return;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new DirectoryTask(entry, scan));
+                    } else if (filter.test(entry)
+                            && (attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(entry)))) {
+                        scan.found(entry.toFile());
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // 无法读取的目录跳过，与 File.listFiles 返回 null 时一致
+            }
+
+            scan.flushIfDue();
+            invokeAll(subdirectories);
+        }
+    }
+}
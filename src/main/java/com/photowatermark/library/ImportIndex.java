@@ -0,0 +1,199 @@
+package com.photowatermark.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已导入图片的索引，用于导入时的重复检查
+ * 同名文件视为重复；开启按内容识别后，不同文件夹、不同文件名的同一张照片也视为重复。
+ * 内容比较先按文件大小分组，只有大小相同时才计算 SHA-256，摘要按文件缓存。
+ *
+ * 读取文件大小和计算摘要由 prepare 在后台线程中完成，事件线程中的 findDuplicate、add、remove
+ * 只查询和修改内存中的索引，不访问文件系统。
+ * 除 prepare 外的方法不是线程安全的，应只在事件线程中使用
+ */
+public class ImportIndex {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    // 以下只在事件线程中访问
+    private final Map<String, File> filesByName = new HashMap<>();
+    private final Map<Long, List<File>> indexedByLength = new HashMap<>();
+    // 建立索引时记录的大小，文件之后被修改也能从正确的分组中移除
+    private final Map<File, Long> indexedLengths = new HashMap<>();
+
+    // 已准备（包括已加入索引）的文件按大小分组，由 knownByLength 自身加锁保护
+    private final Map<Long, List<File>> knownByLength = new HashMap<>();
+    private final Map<File, byte[]> digests = new ConcurrentHashMap<>();
+    private volatile boolean contentHashing;
+
+    /**
+     * 开启或关闭按内容识别
+     * 开启前已准备的文件若当时没有计算摘要，只按文件名判断
+     */
+    public void setContentHashing(boolean contentHashing) {
+        this.contentHashing = contentHashing;
+    }
+
+    public boolean isContentHashing() {
+        return contentHashing;
+    }
+
+    /**
+     * 读取文件大小，开启按内容识别且已有大小相同的文件时计算双方的摘要
+     * 可能读取整个文件，应在后台线程中调用；得到的候选文件交给 findDuplicate，
+     * 之后加入索引或调用 discard
+     */
+    public Candidate prepare(File file) {
+        long length = file.length();
+        List<File> sameLength;
+        synchronized (knownByLength) {
+            List<File> group = knownByLength.computeIfAbsent(length, key -> new ArrayList<>(1));
+            sameLength = new ArrayList<>(group);
+            group.add(file);
+        }
+        // 大小相同的两个文件中后准备的一方负责计算双方的摘要，先加入索引的一方不会缺少摘要
+        if (contentHashing && !sameLength.isEmpty()) {
+            digest(file);
+            for (File other : sameLength) {
+                digest(other);
+            }
+        }
+        return new Candidate(file, length);
+    }
+
+    /**
+     * 查找与候选文件重复的已导入文件，没有时返回 null
+     * 无法读取文件内容时只按文件名判断；找到重复文件时候选文件随之丢弃
+     */
+    public File findDuplicate(Candidate candidate) {
+        File file = candidate.file;
+        File duplicate = filesByName.get(file.getName());
+        if (duplicate == null && contentHashing) {
+            duplicate = findSameContent(candidate);
+        }
+        if (duplicate != null) {
+            discard(candidate);
+        }
+        return duplicate;
+    }
+
+    public void add(Candidate candidate) {
+        File file = candidate.file;
+        filesByName.put(file.getName(), file);
+        indexedLengths.put(file, candidate.length);
+        indexedByLength.computeIfAbsent(candidate.length, key -> new ArrayList<>(1)).add(file);
+    }
+
+    /**
+     * 丢弃已准备但不加入索引的候选文件
+     */
+    public void discard(Candidate candidate) {
+        forget(candidate.file, candidate.length);
+    }
+
+    public void remove(File file) {
+        if (!file.equals(filesByName.get(file.getName()))) {
+            return;
+        }
+        filesByName.remove(file.getName());
+        Long length = indexedLengths.remove(file);
+        if (length != null) {
+            removeFromGroup(indexedByLength, length, file);
+            forget(file, length);
+        }
+    }
+
+    public int size() {
+        return filesByName.size();
+    }
+
+    private File findSameContent(Candidate candidate) {
+        List<File> sameLength = indexedByLength.get(candidate.length);
+        if (sameLength == null) {
+            return null;
+        }
+        byte[] digest = digests.get(candidate.file);
+        if (digest == null) {
+            return null;
+        }
+        for (File indexed : sameLength) {
+            if (Arrays.equals(digest, digests.get(indexed))) {
+                return indexed;
+            }
+        }
+        return null;
+    }
+
+    private void forget(File file, long length) {
+        synchronized (knownByLength) {
+            removeFromGroup(knownByLength, length, file);
+            // 同一文件可能被准备多次，最后一次移除时才丢弃摘要
+            List<File> group = knownByLength.get(length);
+            if (group == null || !group.contains(file)) {
+                digests.remove(file);
+            }
+        }
+    }
+
+    private static void removeFromGroup(Map<Long, List<File>> groups, long length, File file) {
+        List<File> group = groups.get(length);
+        if (group != null) {
+            group.remove(file);
+            if (group.isEmpty()) {
+                groups.remove(length);
+            }
+        }
+    }
+
+    // 计算并缓存文件内容的摘要，读取失败时返回 null
+    private byte[] digest(File file) {
+        byte[] digest = digests.get(file);
+        if (digest != null) {
+            return digest;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                md.update(buffer, 0, count);
+            }
+            digest = md.digest();
+        } catch (IOException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 Java 平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+        digests.put(file, digest);
+        return digest;
+    }
+
+    /**
+     * 已读取大小（必要时已计算摘要）、等待在事件线程中检查的文件
+     */
+    public static final class Candidate {
+        private final File file;
+        private final long length;
+
+        private Candidate(File file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+}
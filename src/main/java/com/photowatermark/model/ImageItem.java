@@ -1,15 +1,26 @@
 package com.photowatermark.model;
 
+import com.photowatermark.cache.ImageCache;
+import com.photowatermark.util.ImageUtils;
 import javafx.beans.property.*;
 import javafx.scene.image.Image;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * 图片项模型类
  * 用于存储图片文件信息和处理状态
+ * 解码后的图片和缩略图不由图片项持有，而是放在所有图片项共用的按字节限额的缓存中，
+ * 被淘汰后通过 loadImage 重新加载，列表中的图片数量不影响占用的内存
  */
 public class ImageItem {
     
+    // 原图缓存的默认预算为最大堆的四分之一
+    private static final ImageCache<File, Image> IMAGE_CACHE =
+        new ImageCache<>(Runtime.getRuntime().maxMemory() / 4, ImageItem::imageBytes);
+    private static final ImageCache<File, Image> THUMBNAIL_CACHE =
+        new ImageCache<>(32L * 1024 * 1024, ImageItem::imageBytes);
+    
     private final File file;
     private final StringProperty fileName;
     private final StringProperty filePath;
@@ -17,9 +28,6 @@ public class ImageItem {
     private final StringProperty status;
     private final BooleanProperty processed;
     
-    private Image image;
-    private Image thumbnail;
-    
     public ImageItem(File file) {
         this.file = file;
         this.fileName = new SimpleStringProperty(file.getName());
@@ -82,20 +90,53 @@ public class ImageItem {
         return processed;
     }
     
+    /**
+     * 已解码的图片，尚未加载或已被缓存淘汰时返回 null
+     */
     public Image getImage() {
-        return image;
+        return IMAGE_CACHE.getIfPresent(file);
     }
     
     public void setImage(Image image) {
-        this.image = image;
+        if (image == null) {
+            IMAGE_CACHE.invalidate(file);
+        } else {
+            IMAGE_CACHE.put(file, image);
+        }
+    }
+    
+    /**
+     * 获取解码后的图片，不在缓存中时从文件加载，会阻塞调用线程
+     */
+    public Image loadImage() throws IOException {
+        return IMAGE_CACHE.get(file, () -> ImageUtils.loadImage(file));
     }
     
+    /**
+     * 缩略图，未设置或已被缓存淘汰时返回 null
+     */
     public Image getThumbnail() {
-        return thumbnail;
+        return THUMBNAIL_CACHE.getIfPresent(file);
     }
     
     public void setThumbnail(Image thumbnail) {
-        this.thumbnail = thumbnail;
+        if (thumbnail == null) {
+            THUMBNAIL_CACHE.invalidate(file);
+        } else {
+            THUMBNAIL_CACHE.put(file, thumbnail);
+        }
+    }
+    
+    /**
+     * 设置所有图片项共用的原图缓存预算（字节）
+     */
+    public static void setImageCacheBudget(long maxBytes) {
+        IMAGE_CACHE.setMaxBytes(maxBytes);
+    }
+    
+    // JavaFX 图片按每像素4字节存储
+    private static long imageBytes(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
     }
     
     /**
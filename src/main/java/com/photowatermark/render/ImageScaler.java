@@ -0,0 +1,72 @@
+package com.photowatermark.render;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * 预览和缩略图使用的图片缩放
+ */
+public final class ImageScaler {
+
+    private ImageScaler() {
+    }
+
+    /**
+     * 按比例缩小到不超过给定尺寸，图片已经足够小时原样返回
+     */
+    public static BufferedImage scaleToFit(BufferedImage original, int maxWidth, int maxHeight) {
+        int originalWidth = original.getWidth();
+        int originalHeight = original.getHeight();
+
+        // 计算缩放比例
+        double scaleX = (double) maxWidth / originalWidth;
+        double scaleY = (double) maxHeight / originalHeight;
+        double scale = Math.min(scaleX, scaleY);
+
+        // 如果图片已经小于最大尺寸，不需要缩放
+        if (scale >= 1.0) {
+            return original;
+        }
+
+        int scaledWidth = (int) (originalWidth * scale);
+        int scaledHeight = (int) (originalHeight * scale);
+
+        BufferedImage scaledImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaledImage.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(original, 0, 0, scaledWidth, scaledHeight, null);
+        g2d.dispose();
+
+        return scaledImage;
+    }
+
+    /**
+     * 生成白底、居中、保持宽高比的正方形缩略图
+     */
+    public static BufferedImage thumbnail(BufferedImage originalImage, int thumbnailSize) {
+        int originalWidth = originalImage.getWidth();
+        int originalHeight = originalImage.getHeight();
+
+        // 计算缩放比例，保持宽高比
+        double scale = Math.min((double) thumbnailSize / originalWidth, (double) thumbnailSize / originalHeight);
+        int scaledWidth = (int) (originalWidth * scale);
+        int scaledHeight = (int) (originalHeight * scale);
+
+        // 创建缩略图
+        BufferedImage thumbnail = new BufferedImage(thumbnailSize, thumbnailSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = thumbnail.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, thumbnailSize, thumbnailSize);
+
+        // 居中绘制缩放后的图片
+        int x = (thumbnailSize - scaledWidth) / 2;
+        int y = (thumbnailSize - scaledHeight) / 2;
+        g2d.drawImage(originalImage, x, y, scaledWidth, scaledHeight, null);
+        g2d.dispose();
+
+        return thumbnail;
+    }
+}
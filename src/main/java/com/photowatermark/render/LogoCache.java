@@ -0,0 +1,99 @@
+package com.photowatermark.render;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 图片水印（Logo）的解码缓存
+ * 每个文件只解码一次并转换为预乘Alpha的ARGB，缩放和合成时不必再转换；
+ * 文件被修改后按新的修改时间和大小重新解码
+ */
+final class LogoCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 8;
+
+    private final Map<String, Logo> logos;
+
+    LogoCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    LogoCache(int maxEntries) {
+        this.logos = new LinkedHashMap<String, Logo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Logo> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取解码后的图片，不存在或已过期时重新解码；读取失败时抛出 UncheckedIOException
+     */
+    Logo get(String path) {
+        File file = new File(path);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (logos) {
+            Logo logo = logos.get(path);
+            if (logo != null && logo.lastModified == lastModified && logo.length == length) {
+                return logo;
+            }
+        }
+
+        // 在锁外解码，并发解码同一文件时保留先放入的结果
+        Logo decoded = new Logo(decode(file), lastModified, length);
+        synchronized (logos) {
+            Logo existing = logos.get(path);
+            if (existing != null && existing.lastModified == lastModified && existing.length == length) {
+                return existing;
+            }
+            logos.put(path, decoded);
+            return decoded;
+        }
+    }
+
+    void clear() {
+        synchronized (logos) {
+            logos.clear();
+        }
+    }
+
+    private static BufferedImage decode(File file) {
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("不支持的图片格式");
+            }
+            BufferedImage premultiplied = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g2d = premultiplied.createGraphics();
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
+            return premultiplied;
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法读取水印图片 " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解码后的图片，同一版本的文件对应同一个对象，可作为图块缓存键的一部分
+     */
+    static final class Logo {
+        final BufferedImage image;
+        final long lastModified;
+        final long length;
+
+        Logo(BufferedImage image, long lastModified, long length) {
+            this.image = image;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.photowatermark.render;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 后台预览渲染，只保留最新的请求
+ * 短时间内的连续请求合并为一次渲染；渲染期间有新请求或被取消时，旧结果直接丢弃，不会发布
+ */
+public class PreviewRenderer {
+
+    // 合并请求的等待时间，约为一帧
+    private static final long DEFAULT_DELAY_MILLIS = 15;
+
+    private final WatermarkRenderer renderer;
+    private final Executor publisher;
+    private final long delayMillis;
+    private final ScheduledExecutorService executor;
+
+    // 等待渲染的最新请求，为 null 时没有已排队的任务
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    // 最新请求的序号，发布前与之比较以丢弃过期结果
+    private final AtomicLong latestGeneration = new AtomicLong();
+
+    /**
+     * publisher 用于发布渲染结果，界面中传入 SwingUtilities::invokeLater
+     */
+    public PreviewRenderer(WatermarkRenderer renderer, Executor publisher) {
+        this(renderer, publisher, DEFAULT_DELAY_MILLIS);
+    }
+
+    public PreviewRenderer(WatermarkRenderer renderer, Executor publisher, long delayMillis) {
+        this.renderer = renderer;
+        this.publisher = publisher;
+        this.delayMillis = delayMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "preview-renderer");
+            // 不阻止程序退出
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交预览请求，替换尚未开始的旧请求
+     * scaledImage 为缩小后的原图，imageWidth/imageHeight 为原图尺寸，调用后不得再修改 scaledImage
+     */
+    public void request(BufferedImage scaledImage, int imageWidth, int imageHeight,
+                        WatermarkSettings settings, double scale, Consumer<BufferedImage> onFrame) {
+        Request request = new Request(latestGeneration.incrementAndGet(),
+            scaledImage, imageWidth, imageHeight, settings, scale, onFrame);
+        // 之前没有排队的请求时才安排任务，否则由已排队的任务取走最新请求
+        if (pending.getAndSet(request) == null) {
+            executor.schedule(this::renderPending, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 取消尚未发布的结果，例如当前图片被移除时
+     */
+    public void cancel() {
+        latestGeneration.incrementAndGet();
+        pending.set(null);
+    }
+
+    /**
+     * 停止后台线程
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void renderPending() {
+        Request request = pending.getAndSet(null);
+        if (request == null || request.generation != latestGeneration.get()) {
+            return;
+        }
+
+        BufferedImage frame;
+        try {
+            frame = renderer.renderScaled(request.scaledImage, request.imageWidth, request.imageHeight,
+                request.settings, request.scale);
+        } catch (RuntimeException e) {
+            System.err.println("预览渲染失败: " + e.getMessage());
+            return;
+        }
+
+        // 渲染期间已有更新的请求，结果作废
+        if (request.generation != latestGeneration.get()) {
+            return;
+        }
+        publisher.execute(() -> {
+            if (request.generation == latestGeneration.get()) {
+                request.onFrame.accept(frame);
+            }
+        });
+    }
+
+    private static final class Request {
+        final long generation;
+        final BufferedImage scaledImage;
+        final int imageWidth;
+        final int imageHeight;
+        final WatermarkSettings settings;
+        final double scale;
+        final Consumer<BufferedImage> onFrame;
+
+        Request(long generation, BufferedImage scaledImage, int imageWidth, int imageHeight,
+                WatermarkSettings settings, double scale, Consumer<BufferedImage> onFrame) {
+            this.generation = generation;
+            this.scaledImage = scaledImage;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.settings = settings;
+            this.scale = scale;
+            this.onFrame = onFrame;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.photowatermark.render;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * 水印渲染器
+ * 只依赖 WatermarkSettings 快照，不访问任何界面组件，可在多个线程中同时调用
+ * 水印先栅格化为图块并缓存，每张图片只做一次合成；平铺模式下重复贴同一个图块，
+ * 只合成图块覆盖的像素，代价接近一次整幅合成，与水印个数基本无关。
+ * 图片水印的文件无法读取时，各绘制方法抛出 UncheckedIOException
+ */
+public class WatermarkRenderer {
+
+    // 预设位置与图片边缘的距离
+    private static final int MARGIN = 10;
+
+    // 同一模板在整个批次中只栅格化一次
+    private final WatermarkSpriteCache spriteCache = new WatermarkSpriteCache();
+
+    /**
+     * 生成带水印的图片副本，原图不会被修改
+     */
+    public BufferedImage render(BufferedImage originalImage, WatermarkSettings settings) {
+        BufferedImage watermarkedImage = new BufferedImage(
+            originalImage.getWidth(),
+            originalImage.getHeight(),
+            BufferedImage.TYPE_INT_RGB
+        );
+
+        Graphics2D g2d = watermarkedImage.createGraphics();
+        g2d.drawImage(originalImage, 0, 0, null);
+        paint(g2d, originalImage.getWidth(), originalImage.getHeight(), settings);
+        g2d.dispose();
+
+        return watermarkedImage;
+    }
+
+    /**
+     * 在缩小后的图片上生成带水印的预览副本
+     * imageWidth/imageHeight 为原图尺寸，水印位置和大小按原图计算后乘以 scale，代价只与缩小后的尺寸有关
+     */
+    public BufferedImage renderScaled(BufferedImage scaledImage, int imageWidth, int imageHeight,
+                                      WatermarkSettings settings, double scale) {
+        BufferedImage preview = new BufferedImage(
+            scaledImage.getWidth(),
+            scaledImage.getHeight(),
+            BufferedImage.TYPE_INT_RGB
+        );
+
+        Graphics2D g2d = preview.createGraphics();
+        g2d.drawImage(scaledImage, 0, 0, null);
+        paint(g2d, imageWidth, imageHeight, settings, scale);
+        g2d.dispose();
+
+        return preview;
+    }
+
+    /**
+     * 直接在传入的图片上合成水印，只改写水印覆盖的矩形区域
+     * 适用于刚解码、不再被其他地方使用的图片；图片类型不适合直接写入时（带透明通道、灰度、索引色）
+     * 退回到复制方式，因此调用方应使用返回值
+     */
+    public BufferedImage renderInPlace(BufferedImage image, WatermarkSettings settings) {
+        if (!supportsInPlace(image)) {
+            return render(image, settings);
+        }
+
+        Rectangle dirty = getWatermarkBounds(image.getWidth(), image.getHeight(), settings);
+        if (dirty.isEmpty()) {
+            return image;
+        }
+
+        Graphics2D g2d = image.createGraphics();
+        g2d.clip(dirty);
+        paint(g2d, image.getWidth(), image.getHeight(), settings);
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * 是否可以直接在该图片上合成：必须是不透明的RGB类型，结果才与复制到 TYPE_INT_RGB 后绘制一致
+     */
+    public static boolean supportsInPlace(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 在给定的画布上绘制水印
+     * imageWidth/imageHeight 为用于定位的完整图片尺寸，画布可以只是其中的一部分（通过平移变换对齐）
+     */
+    public void paint(Graphics2D g2d, int imageWidth, int imageHeight, WatermarkSettings settings) {
+        paint(g2d, imageWidth, imageHeight, settings, 1.0);
+    }
+
+    /**
+     * 在缩放后的画布上绘制水印
+     * 位置按原图尺寸计算后乘以 scale，水印本身也按相同比例缩放
+     */
+    public void paint(Graphics2D g2d, int imageWidth, int imageHeight, WatermarkSettings settings, double scale) {
+        if (!settings.hasWatermark()) {
+            return;
+        }
+
+        WatermarkSprite sprite = spriteCache.get(settings, scale);
+        Point origin = spriteOrigin(sprite, imageWidth, imageHeight, settings, scale);
+        if (!settings.isTiled()) {
+            g2d.drawImage(sprite.getImage(), origin.x, origin.y, null);
+            return;
+        }
+
+        // 网格以单个水印的位置为对齐点，拖拽时整个网格随之移动
+        Rectangle area = canvasBounds(imageWidth, imageHeight, scale);
+        Rectangle clip = g2d.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        if (!area.isEmpty()) {
+            paintTiled(g2d, sprite.getImage(), origin, area, (int) Math.round(settings.getTileSpacing() * scale));
+        }
+    }
+
+    /**
+     * 按交错网格重复绘制图块，奇数行错开半格；只绘制与 area 相交的图块，
+     * 分块导出和局部重绘时不会遍历整张图片
+     */
+    private static void paintTiled(Graphics2D g2d, BufferedImage sprite, Point origin, Rectangle area, int spacing) {
+        int spriteWidth = sprite.getWidth();
+        int spriteHeight = sprite.getHeight();
+        int cellWidth = spriteWidth + Math.max(0, spacing);
+        int cellHeight = spriteHeight + Math.max(0, spacing);
+
+        int firstRow = Math.floorDiv(area.y - spriteHeight - origin.y, cellHeight) + 1;
+        int lastRow = Math.floorDiv(area.y + area.height - 1 - origin.y, cellHeight);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int y = origin.y + row * cellHeight;
+            int rowX = origin.x + (Math.floorMod(row, 2) == 1 ? cellWidth / 2 : 0);
+            int firstColumn = Math.floorDiv(area.x - spriteWidth - rowX, cellWidth) + 1;
+            int lastColumn = Math.floorDiv(area.x + area.width - 1 - rowX, cellWidth);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                g2d.drawImage(sprite, rowX + column * cellWidth, y, null);
+            }
+        }
+    }
+
+    /**
+     * 水印覆盖的矩形区域（已裁剪到图片范围内），没有水印时返回空矩形
+     */
+    public Rectangle getWatermarkBounds(int imageWidth, int imageHeight, WatermarkSettings settings) {
+        return getWatermarkBounds(imageWidth, imageHeight, settings, 1.0);
+    }
+
+    /**
+     * 缩放后画布上水印覆盖的矩形区域
+     */
+    public Rectangle getWatermarkBounds(int imageWidth, int imageHeight, WatermarkSettings settings, double scale) {
+        if (!settings.hasWatermark()) {
+            return new Rectangle();
+        }
+
+        Rectangle canvas = canvasBounds(imageWidth, imageHeight, scale);
+        if (settings.isTiled()) {
+            return canvas;
+        }
+
+        WatermarkSprite sprite = spriteCache.get(settings, scale);
+        Point origin = spriteOrigin(sprite, imageWidth, imageHeight, settings, scale);
+        Rectangle bounds = new Rectangle(origin.x, origin.y, sprite.getImage().getWidth(), sprite.getImage().getHeight());
+        Rectangle visible = bounds.intersection(canvas);
+        return visible.isEmpty() ? new Rectangle() : visible;
+    }
+
+    /**
+     * 按缩放比例栅格化的水印图块（来自缓存），预览拖拽时作为独立的水印层使用
+     * 没有水印文本（或未选择水印图片）时返回 null
+     */
+    public WatermarkSprite getSprite(WatermarkSettings settings, double scale) {
+        return settings.hasWatermark() ? spriteCache.get(settings, scale) : null;
+    }
+
+    /**
+     * 图块左上角在缩放后画布上的位置，不裁剪到画布范围
+     */
+    public Point getSpriteOrigin(int imageWidth, int imageHeight, WatermarkSettings settings, double scale) {
+        return spriteOrigin(spriteCache.get(settings, scale), imageWidth, imageHeight, settings, scale);
+    }
+
+    private static Rectangle canvasBounds(int imageWidth, int imageHeight, double scale) {
+        return new Rectangle(0, 0, (int) Math.ceil(imageWidth * scale), (int) Math.ceil(imageHeight * scale));
+    }
+
+    // 图块左上角在（缩放后）画布上的位置
+    private static Point spriteOrigin(WatermarkSprite sprite, int imageWidth, int imageHeight,
+                                      WatermarkSettings settings, double scale) {
+        Point anchor = computeAnchor(imageWidth, imageHeight, sprite.getTextWidth(), sprite.getTextHeight(), settings);
+        return new Point((int) Math.round(anchor.x * scale) + sprite.getOriginX(),
+                         (int) Math.round(anchor.y * scale) + sprite.getOriginY());
+    }
+
+    /**
+     * 计算文本基线起点：预设位置加上拖拽产生的偏移
+     */
+    public static Point computeAnchor(int imageWidth, int imageHeight, int textWidth, int textHeight,
+                                      WatermarkSettings settings) {
+        int x, y;
+        switch (settings.getPosition()) {
+            case "左上角":
+                x = MARGIN;
+                y = textHeight + MARGIN;
+                break;
+            case "上中":
+                x = (imageWidth - textWidth) / 2;
+                y = textHeight + MARGIN;
+                break;
+            case "右上角":
+                x = imageWidth - textWidth - MARGIN;
+                y = textHeight + MARGIN;
+                break;
+            case "左中":
+                x = MARGIN;
+                y = (imageHeight + textHeight) / 2;
+                break;
+            case "中心":
+                x = (imageWidth - textWidth) / 2;
+                y = (imageHeight + textHeight) / 2;
+                break;
+            case "右中":
+                x = imageWidth - textWidth - MARGIN;
+                y = (imageHeight + textHeight) / 2;
+                break;
+            case "左下角":
+                x = MARGIN;
+                y = imageHeight - MARGIN;
+                break;
+            case "下中":
+                x = (imageWidth - textWidth) / 2;
+                y = imageHeight - MARGIN;
+                break;
+            case "右下角":
+            default:
+                x = imageWidth - textWidth - MARGIN;
+                y = imageHeight - MARGIN;
+                break;
+        }
+
+        // 如果使用自定义位置（拖拽后），叠加偏移量
+        if (settings.isUseCustomPosition()) {
+            x += settings.getOffsetX();
+            y += settings.getOffsetY();
+        }
+        return new Point(x, y);
+    }
+}
@@ -0,0 +1,189 @@
+package com.photowatermark.render;
+
+import com.photowatermark.WatermarkTemplate;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+
+/**
+ * 水印设置快照
+ * WatermarkTemplate 的不可变副本，创建后可在任意线程间安全共享
+ */
+public final class WatermarkSettings {
+
+    public static final String DEFAULT_FONT_FAMILY = "Arial";
+    public static final String DEFAULT_POSITION = "右下角";
+    public static final int DEFAULT_TILE_SPACING = 80;
+    public static final int DEFAULT_LOGO_SCALE = 100;
+
+    private final String text;
+    private final String fontFamily;
+    private final int fontSize;
+    private final boolean bold;
+    private final boolean italic;
+    private final Color textColor;
+    private final int transparency;
+    private final String position;
+    private final boolean shadow;
+    private final boolean stroke;
+    private final int rotationAngle;
+    private final boolean useCustomPosition;
+    private final int offsetX;
+    private final int offsetY;
+    private final boolean tiled;
+    private final int tileSpacing;
+    private final boolean imageWatermark;
+    private final String logoPath;
+    private final int logoScale;
+
+    private WatermarkSettings(WatermarkTemplate template) {
+        this.text = template.getWatermarkText();
+        this.fontFamily = template.getFontFamily() != null ? template.getFontFamily() : DEFAULT_FONT_FAMILY;
+        this.fontSize = template.getFontSize() > 0 ? template.getFontSize() : 24;
+        this.bold = template.isBold();
+        this.italic = template.isItalic();
+        this.textColor = template.getTextColor() != null ? template.getTextColor() : Color.WHITE;
+        this.transparency = Math.max(0, Math.min(100, template.getTransparency()));
+        this.position = template.getPosition() != null ? template.getPosition() : DEFAULT_POSITION;
+        this.shadow = template.isHasShadow();
+        this.stroke = template.isHasStroke();
+        this.rotationAngle = template.getRotationAngle();
+        this.useCustomPosition = template.isUseCustomPosition();
+        // Point是可变对象，只复制坐标值
+        Point offset = template.getWatermarkOffset();
+        this.offsetX = offset != null ? offset.x : 0;
+        this.offsetY = offset != null ? offset.y : 0;
+        this.tiled = template.isTiled();
+        this.tileSpacing = template.getTileSpacing() >= 0 ? template.getTileSpacing() : DEFAULT_TILE_SPACING;
+        this.imageWatermark = template.isImageWatermark();
+        this.logoPath = template.getLogoPath();
+        this.logoScale = template.getLogoScale() > 0 ? template.getLogoScale() : DEFAULT_LOGO_SCALE;
+    }
+
+    /**
+     * 从模板创建设置快照，之后对模板的修改不会影响快照
+     */
+    public static WatermarkSettings from(WatermarkTemplate template) {
+        return new WatermarkSettings(template);
+    }
+
+    /**
+     * 是否有需要绘制的水印文本
+     */
+    public boolean hasText() {
+        return text != null && !text.trim().isEmpty();
+    }
+
+    /**
+     * 是否有需要绘制的水印：图片水印需要选择了图片，文本水印需要有文本
+     */
+    public boolean hasWatermark() {
+        return imageWatermark ? logoPath != null && !logoPath.isEmpty() : hasText();
+    }
+
+    /**
+     * 根据字体设置创建字体
+     */
+    public Font createFont() {
+        int style = Font.PLAIN;
+        if (bold) style |= Font.BOLD;
+        if (italic) style |= Font.ITALIC;
+        return new Font(fontFamily, style, fontSize);
+    }
+
+    /**
+     * 不透明度（0.0-1.0），由透明度百分比换算
+     */
+    public float getAlpha() {
+        return 1.0f - (transparency / 100.0f);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getFontFamily() {
+        return fontFamily;
+    }
+
+    public int getFontSize() {
+        return fontSize;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public boolean isItalic() {
+        return italic;
+    }
+
+    public Color getTextColor() {
+        return textColor;
+    }
+
+    public int getTransparency() {
+        return transparency;
+    }
+
+    public String getPosition() {
+        return position;
+    }
+
+    public boolean hasShadow() {
+        return shadow;
+    }
+
+    public boolean hasStroke() {
+        return stroke;
+    }
+
+    public int getRotationAngle() {
+        return rotationAngle;
+    }
+
+    public boolean isUseCustomPosition() {
+        return useCustomPosition;
+    }
+
+    public int getOffsetX() {
+        return offsetX;
+    }
+
+    public int getOffsetY() {
+        return offsetY;
+    }
+
+    /**
+     * 是否平铺，平铺时位置和偏移只决定网格的对齐点
+     */
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    /**
+     * 平铺时相邻水印之间的间距（原图像素）
+     */
+    public int getTileSpacing() {
+        return tileSpacing;
+    }
+
+    /**
+     * 是否为图片水印，图片水印不使用文本、字体、颜色和阴影描边设置
+     */
+    public boolean isImageWatermark() {
+        return imageWatermark;
+    }
+
+    public String getLogoPath() {
+        return logoPath;
+    }
+
+    /**
+     * 图片水印相对原始尺寸的缩放百分比
+     */
+    public int getLogoScale() {
+        return logoScale;
+    }
+}
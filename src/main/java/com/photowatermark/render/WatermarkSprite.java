@@ -0,0 +1,198 @@
+package com.photowatermark.render;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * 预先栅格化的水印图块
+ * 文本、阴影、描边和旋转只绘制一次，保存为预乘Alpha的ARGB图片，之后每张图片只需要做一次合成
+ */
+public final class WatermarkSprite {
+
+    // 抗锯齿边缘可能超出轮廓边界，预留少量像素
+    private static final int PADDING = 2;
+
+    // 与渲染器中绘制时使用的设置一致：抗锯齿开启，不使用小数度量
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, false);
+
+    private final BufferedImage image;
+    private final int originX;
+    private final int originY;
+    private final int textWidth;
+    private final int textHeight;
+
+    private WatermarkSprite(BufferedImage image, int originX, int originY, int textWidth, int textHeight) {
+        this.image = image;
+        this.originX = originX;
+        this.originY = originY;
+        this.textWidth = textWidth;
+        this.textHeight = textHeight;
+    }
+
+    /**
+     * 按给定缩放比例栅格化水印，scale为1.0时与原图分辨率一致
+     */
+    static WatermarkSprite create(WatermarkSettings settings, double scale) {
+        String text = settings.getText();
+        Font font = settings.createFont();
+        TextLayout textLayout = new TextLayout(text, font, FRC);
+        Rectangle2D textBounds = textLayout.getBounds();
+        int textWidth = (int) textBounds.getWidth();
+        int textHeight = (int) textBounds.getHeight();
+
+        // 以文本基线起点为原点的绘制变换：缩放后绕文本中心旋转
+        AffineTransform transform = AffineTransform.getScaleInstance(scale, scale);
+        if (settings.getRotationAngle() != 0) {
+            transform.rotate(Math.toRadians(settings.getRotationAngle()), textWidth / 2.0, -textHeight / 2.0);
+        }
+
+        // 计算文本、阴影和描边的总范围
+        Shape outline = textLayout.getOutline(null);
+        Rectangle2D bounds = outline.getBounds2D();
+        if (settings.hasShadow()) {
+            Rectangle2D shadowBounds = outline.getBounds2D();
+            shadowBounds.setRect(shadowBounds.getX() + 2, shadowBounds.getY() + 2,
+                shadowBounds.getWidth(), shadowBounds.getHeight());
+            bounds.add(shadowBounds);
+        }
+        if (settings.hasStroke()) {
+            bounds.setRect(bounds.getX() - 1, bounds.getY() - 1, bounds.getWidth() + 2, bounds.getHeight() + 2);
+        }
+        Rectangle2D deviceBounds = transform.createTransformedShape(bounds).getBounds2D();
+
+        int minX = (int) Math.floor(deviceBounds.getMinX()) - PADDING;
+        int minY = (int) Math.floor(deviceBounds.getMinY()) - PADDING;
+        int width = Math.max(1, (int) Math.ceil(deviceBounds.getMaxX()) + PADDING - minX);
+        int height = Math.max(1, (int) Math.ceil(deviceBounds.getMaxY()) + PADDING - minY);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.translate(-minX, -minY);
+        g2d.transform(transform);
+        g2d.setFont(font);
+
+        float alpha = settings.getAlpha();
+
+        // 绘制阴影效果
+        if (settings.hasShadow()) {
+            g2d.setColor(new Color(0, 0, 0, alpha * 0.5f));
+            g2d.drawString(text, 2, 2);
+        }
+
+        // 绘制描边效果
+        if (settings.hasStroke()) {
+            g2d.setColor(new Color(0, 0, 0, alpha));
+            g2d.setStroke(new BasicStroke(2));
+            g2d.draw(outline);
+        }
+
+        // 绘制主文本
+        Color color = settings.getTextColor();
+        g2d.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), (int) (alpha * 255)));
+        g2d.drawString(text, 0, 0);
+        g2d.dispose();
+
+        return new WatermarkSprite(image, minX, minY, textWidth, textHeight);
+    }
+
+    /**
+     * 按给定缩放比例生成图片水印的图块：图片按设置的百分比和 scale 缩放、旋转并乘以不透明度
+     * 图片占据的矩形与文本一致，以左下角为定位起点，因此预设位置、拖拽和平铺的处理与文本水印相同
+     */
+    static WatermarkSprite createLogo(WatermarkSettings settings, BufferedImage logo, double scale) {
+        double logoScale = settings.getLogoScale() / 100.0;
+        int logoWidth = Math.max(1, (int) Math.round(logo.getWidth() * logoScale));
+        int logoHeight = Math.max(1, (int) Math.round(logo.getHeight() * logoScale));
+
+        AffineTransform transform = AffineTransform.getScaleInstance(scale, scale);
+        if (settings.getRotationAngle() != 0) {
+            transform.rotate(Math.toRadians(settings.getRotationAngle()), logoWidth / 2.0, -logoHeight / 2.0);
+        }
+        Rectangle2D bounds = new Rectangle2D.Double(0, -logoHeight, logoWidth, logoHeight);
+        Rectangle2D deviceBounds = transform.createTransformedShape(bounds).getBounds2D();
+
+        int minX = (int) Math.floor(deviceBounds.getMinX()) - PADDING;
+        int minY = (int) Math.floor(deviceBounds.getMinY()) - PADDING;
+        int width = Math.max(1, (int) Math.ceil(deviceBounds.getMaxX()) + PADDING - minX);
+        int height = Math.max(1, (int) Math.ceil(deviceBounds.getMaxY()) + PADDING - minY);
+
+        // 大幅缩小时先逐级减半，避免一次双线性缩放丢失细节
+        BufferedImage source = reduce(logo,
+            (int) Math.ceil(logoWidth * scale), (int) Math.ceil(logoHeight * scale));
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, settings.getAlpha()));
+        g2d.translate(-minX, -minY);
+        g2d.transform(transform);
+        g2d.drawImage(source, 0, -logoHeight, logoWidth, logoHeight, null);
+        g2d.dispose();
+
+        return new WatermarkSprite(image, minX, minY, logoWidth, logoHeight);
+    }
+
+    // 逐级减半直到不超过目标尺寸的两倍，源图为预乘Alpha，插值时透明边缘不会发暗
+    private static BufferedImage reduce(BufferedImage image, int targetWidth, int targetHeight) {
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= targetWidth && current.getHeight() / 2 >= targetHeight
+                && current.getWidth() > 1 && current.getHeight() > 1) {
+            BufferedImage half = new BufferedImage(current.getWidth() / 2, current.getHeight() / 2,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g2d = half.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(current, 0, 0, half.getWidth(), half.getHeight(), null);
+            g2d.dispose();
+            current = half;
+        }
+        return current;
+    }
+
+    /**
+     * 栅格化后的水印图片（TYPE_INT_ARGB_PRE）
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * 图片左上角相对文本基线起点的横向偏移
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * 图片左上角相对文本基线起点的纵向偏移
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * 未缩放时的文本（或图片水印）宽度，用于计算预设位置
+     */
+    public int getTextWidth() {
+        return textWidth;
+    }
+
+    /**
+     * 未缩放时的文本（或图片水印）高度，用于计算预设位置
+     */
+    public int getTextHeight() {
+        return textHeight;
+    }
+}
@@ -0,0 +1,122 @@
+package com.photowatermark.render;
+
+import java.awt.Color;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 水印图块缓存
+ * 以外观相关的设置和缩放比例为键；位置不影响图块内容，拖拽水印时不会产生新的缓存项。
+ * 图片水印的原图由 LogoCache 解码一次，每个缩放比例只缩放一次
+ */
+public class WatermarkSpriteCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 32;
+
+    private final Map<Key, WatermarkSprite> sprites;
+    private final LogoCache logoCache = new LogoCache();
+
+    public WatermarkSpriteCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public WatermarkSpriteCache(int maxEntries) {
+        // 按访问顺序淘汰最久未使用的图块，避免界面上连续修改设置时无限增长
+        this.sprites = new LinkedHashMap<Key, WatermarkSprite>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, WatermarkSprite> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 获取图块，不存在时栅格化并缓存
+     */
+    public WatermarkSprite get(WatermarkSettings settings, double scale) {
+        LogoCache.Logo logo = settings.isImageWatermark() ? logoCache.get(settings.getLogoPath()) : null;
+        Key key = new Key(settings, logo, scale);
+        synchronized (sprites) {
+            WatermarkSprite sprite = sprites.get(key);
+            if (sprite != null) {
+                return sprite;
+            }
+        }
+
+        // 在锁外栅格化，不阻塞其他线程读取已有图块；并发创建同一图块时保留先放入的结果
+        WatermarkSprite created = logo != null
+            ? WatermarkSprite.createLogo(settings, logo.image, scale)
+            : WatermarkSprite.create(settings, scale);
+        synchronized (sprites) {
+            WatermarkSprite existing = sprites.putIfAbsent(key, created);
+            return existing != null ? existing : created;
+        }
+    }
+
+    public void clear() {
+        synchronized (sprites) {
+            sprites.clear();
+        }
+        logoCache.clear();
+    }
+
+    private static final class Key {
+        private final String text;
+        private final String fontFamily;
+        private final int fontSize;
+        private final boolean bold;
+        private final boolean italic;
+        private final Color textColor;
+        private final int transparency;
+        private final boolean shadow;
+        private final boolean stroke;
+        private final int rotationAngle;
+        // 图片水印：解码结果按文件版本唯一，按引用比较
+        private final LogoCache.Logo logo;
+        private final int logoScale;
+        private final double scale;
+
+        Key(WatermarkSettings settings, LogoCache.Logo logo, double scale) {
+            this.text = settings.getText();
+            this.fontFamily = settings.getFontFamily();
+            this.fontSize = settings.getFontSize();
+            this.bold = settings.isBold();
+            this.italic = settings.isItalic();
+            this.textColor = settings.getTextColor();
+            this.transparency = settings.getTransparency();
+            this.shadow = settings.hasShadow();
+            this.stroke = settings.hasStroke();
+            this.rotationAngle = settings.getRotationAngle();
+            this.logo = logo;
+            this.logoScale = logo != null ? settings.getLogoScale() : 0;
+            this.scale = scale;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return fontSize == other.fontSize
+                && bold == other.bold
+                && italic == other.italic
+                && transparency == other.transparency
+                && shadow == other.shadow
+                && stroke == other.stroke
+                && rotationAngle == other.rotationAngle
+                && logo == other.logo
+                && logoScale == other.logoScale
+                && Double.compare(scale, other.scale) == 0
+                && Objects.equals(text, other.text)
+                && fontFamily.equals(other.fontFamily)
+                && textColor.equals(other.textColor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, fontFamily, fontSize, bold, italic, textColor, transparency,
+                shadow, stroke, rotationAngle, System.identityHashCode(logo), logoScale, scale);
+        }
+    }
+}
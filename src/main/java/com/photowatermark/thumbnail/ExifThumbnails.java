@@ -0,0 +1,44 @@
+package com.photowatermark.thumbnail;
+
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 读取JPEG中EXIF内嵌的缩略图
+ * 只解析文件头部的元数据段，不解码主图像
+ */
+public final class ExifThumbnails {
+
+    private ExifThumbnails() {
+    }
+
+    /**
+     * 返回内嵌缩略图，文件不是JPEG、没有内嵌缩略图或长边小于 minSize 时返回 null
+     */
+    public static BufferedImage read(File file, int minSize) {
+        String name = file.getName().toLowerCase();
+        if (!name.endsWith(".jpg") && !name.endsWith(".jpeg")) {
+            return null;
+        }
+
+        try {
+            ImageMetadata metadata = Imaging.getMetadata(file);
+            if (!(metadata instanceof JpegImageMetadata)) {
+                return null;
+            }
+            BufferedImage thumbnail = ((JpegImageMetadata) metadata).getExifThumbnail();
+            if (thumbnail == null || Math.max(thumbnail.getWidth(), thumbnail.getHeight()) < minSize) {
+                return null;
+            }
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            // 元数据损坏时退回到解码主图像
+            return null;
+        }
+    }
+}
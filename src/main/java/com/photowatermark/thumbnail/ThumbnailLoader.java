@@ -0,0 +1,111 @@
+package com.photowatermark.thumbnail;
+
+import com.photowatermark.export.ImageCodecs;
+import com.photowatermark.render.ImageScaler;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在后台线程中并行生成缩略图
+ * JPEG优先使用EXIF内嵌缩略图，其他情况解码时按缩略图尺寸隔行隔列采样，不会解码出完整分辨率的图片；
+ * 配置了 ThumbnailStore 时先查持久化缓存
+ */
+public class ThumbnailLoader {
+
+    private final int thumbnailSize;
+    private final ThumbnailStore store;
+    private final ExecutorService executor;
+
+    public ThumbnailLoader(int thumbnailSize) {
+        this(thumbnailSize, null);
+    }
+
+    /**
+     * store 可以为 null，此时每次都重新解码
+     */
+    public ThumbnailLoader(int thumbnailSize, ThumbnailStore store) {
+        this(thumbnailSize, store, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ThumbnailLoader(int thumbnailSize, ThumbnailStore store, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("线程数必须大于0");
+        }
+        if (store != null && store.getThumbnailSize() != thumbnailSize) {
+            throw new IllegalArgumentException("缩略图存储的尺寸不符");
+        }
+        this.thumbnailSize = thumbnailSize;
+        this.store = store;
+        AtomicInteger threadIndex = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-" + threadIndex.getAndIncrement());
+            // 不阻止程序退出
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交缩略图任务，按提交顺序执行；无法解码时以 IOException（包装在 CompletionException 中）结束
+     * 持久化缓存命中时直接返回已完成的结果，不进入后台队列
+     */
+    public CompletableFuture<BufferedImage> load(File file) {
+        if (store != null) {
+            BufferedImage cached = store.get(file);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return createThumbnail(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * 在当前线程生成缩略图
+     */
+    public BufferedImage createThumbnail(File file) throws IOException {
+        // 优先使用相机写入的EXIF缩略图，只有没有时才解码，解码到缩略图的两倍大小，缩小时仍有足够的像素做插值
+        int minSize = thumbnailSize * 2;
+        BufferedImage image = ExifThumbnails.read(file, minSize);
+        if (image == null) {
+            image = ImageCodecs.readSubsampled(file, minSize);
+        }
+        if (image == null) {
+            throw new IOException("不支持的图片格式: " + file.getName());
+        }
+        BufferedImage thumbnail = ImageScaler.thumbnail(image, thumbnailSize);
+        if (store != null) {
+            try {
+                store.put(file, thumbnail);
+            } catch (IOException e) {
+                // 缓存写入失败不影响本次显示
+                System.err.println("无法保存缩略图缓存: " + e.getMessage());
+            }
+        }
+        return thumbnail;
+    }
+
+    public int getThumbnailSize() {
+        return thumbnailSize;
+    }
+
+    /**
+     * 取消尚未开始的任务并停止后台线程
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
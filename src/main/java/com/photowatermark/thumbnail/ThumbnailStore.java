@@ -0,0 +1,344 @@
+package com.photowatermark.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 持久化的缩略图存储
+ * 所有缩略图按固定大小的槽位打包在一个内存映射的图集文件中，另有一个只追加的索引文件记录
+ * 路径、修改时间、文件大小与槽位的对应关系；原图修改后自动视为未缓存。
+ * 打开时对目录加独占锁，目录已被其他进程（或本进程的另一个实例）使用时退回只在内存中缓存；
+ * 索引中被覆盖的旧记录多于有效记录时，打开时重写索引
+ */
+public class ThumbnailStore {
+
+    private static final String DEFAULT_DIR = "thumbnail_cache";
+    private static final String ATLAS_FILE = "thumbnails.atlas";
+    private static final String INDEX_FILE = "thumbnails.idx";
+    private static final String LOCK_FILE = "thumbnails.lock";
+
+    private static final int MAGIC = 0x574D5449; // "WMTI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+
+    // 图集每次至少扩展的槽位数
+    private static final int GROWTH_SLOTS = 1024;
+
+    private final int thumbnailSize;
+    private final int slotBytes;
+    // 只在内存中缓存时以下三个通道均为 null
+    private final FileChannel lockChannel;
+    private final FileChannel atlasChannel;
+    private final FileChannel indexChannel;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private ByteBuffer atlas;
+    private int capacity;
+    private int nextSlot;
+
+    /**
+     * 打开或创建存储；已有文件的缩略图尺寸不同或已损坏时清空重建
+     */
+    public ThumbnailStore(Path directory, int thumbnailSize) throws IOException {
+        this.thumbnailSize = thumbnailSize;
+        this.slotBytes = thumbnailSize * thumbnailSize * 3;
+
+        Files.createDirectories(directory);
+        this.lockChannel = lockDirectory(directory);
+        if (lockChannel == null) {
+            atlasChannel = null;
+            indexChannel = null;
+            mapAtlas(0);
+            return;
+        }
+
+        Path indexPath = directory.resolve(INDEX_FILE);
+        int recordCount = loadIndex(indexPath);
+        boolean valid = recordCount >= 0;
+        if (valid && recordCount - entries.size() > entries.size()) {
+            compactIndex(directory, indexPath);
+        }
+
+        this.atlasChannel = FileChannel.open(directory.resolve(ATLAS_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexPath,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (!valid) {
+            entries.clear();
+            nextSlot = 0;
+            atlasChannel.truncate(0);
+            indexChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(thumbnailSize).flip();
+            indexChannel.write(header, 0);
+        }
+        indexChannel.position(indexChannel.size());
+
+        long existingSlots = atlasChannel.size() / slotBytes;
+        mapAtlas((int) Math.max(existingSlots, nextSlot));
+    }
+
+    /**
+     * 打开工作目录下的默认存储
+     */
+    public static ThumbnailStore openDefault(int thumbnailSize) throws IOException {
+        return new ThumbnailStore(Paths.get(DEFAULT_DIR), thumbnailSize);
+    }
+
+    /**
+     * 是否保存到磁盘；目录被占用时为 false，缩略图只缓存在内存中
+     */
+    public boolean isPersistent() {
+        return lockChannel != null;
+    }
+
+    /**
+     * 读取缓存的缩略图，未缓存或原图已修改时返回 null
+     */
+    public BufferedImage get(File file) {
+        String path = file.getAbsolutePath();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(path);
+        }
+        if (entry == null || entry.lastModified != file.lastModified() || entry.length != file.length()) {
+            return null;
+        }
+
+        BufferedImage thumbnail = new BufferedImage(thumbnailSize, thumbnailSize, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) thumbnail.getRaster().getDataBuffer()).getData();
+        byte[] slot = new byte[slotBytes];
+        synchronized (this) {
+            atlas.get((int) ((long) entry.slot * slotBytes), slot);
+        }
+        for (int i = 0, p = 0; i < pixels.length; i++, p += 3) {
+            pixels[i] = ((slot[p] & 0xFF) << 16) | ((slot[p + 1] & 0xFF) << 8) | (slot[p + 2] & 0xFF);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * 保存缩略图，尺寸必须与存储的缩略图尺寸一致
+     * 同一路径已有槽位时原地覆盖
+     */
+    public void put(File file, BufferedImage thumbnail) throws IOException {
+        if (thumbnail.getWidth() != thumbnailSize || thumbnail.getHeight() != thumbnailSize) {
+            throw new IllegalArgumentException("缩略图尺寸不符");
+        }
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        byte[] slot = new byte[slotBytes];
+        int[] row = new int[thumbnailSize];
+        for (int y = 0, p = 0; y < thumbnailSize; y++) {
+            thumbnail.getRGB(0, y, thumbnailSize, 1, row, 0, thumbnailSize);
+            for (int rgb : row) {
+                slot[p++] = (byte) (rgb >> 16);
+                slot[p++] = (byte) (rgb >> 8);
+                slot[p++] = (byte) rgb;
+            }
+        }
+
+        synchronized (this) {
+            Entry existing = entries.get(path);
+            int slotIndex;
+            if (existing != null) {
+                slotIndex = existing.slot;
+            } else {
+                if (nextSlot >= capacity && !grow()) {
+                    return;
+                }
+                slotIndex = nextSlot++;
+            }
+
+            // 先写图集再追加索引，索引中出现的槽位总是已写入的
+            atlas.put((int) ((long) slotIndex * slotBytes), slot);
+            if (indexChannel != null) {
+                appendIndexRecord(path, lastModified, length, slotIndex);
+            }
+            entries.put(path, new Entry(slotIndex, lastModified, length));
+        }
+    }
+
+    public int getThumbnailSize() {
+        return thumbnailSize;
+    }
+
+    /**
+     * 已缓存的缩略图数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void close() throws IOException {
+        if (lockChannel == null) {
+            return;
+        }
+        ((MappedByteBuffer) atlas).force();
+        atlasChannel.close();
+        indexChannel.close();
+        // 关闭通道即释放锁
+        lockChannel.close();
+    }
+
+    // 对目录加独占锁，已被占用时返回 null
+    // 锁加在单独的文件上，压缩时替换索引文件不影响锁
+    private static FileChannel lockDirectory(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // 本进程中的另一个实例持有锁
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            return null;
+        }
+        return channel;
+    }
+
+    // 读取索引，返回读到的记录数（包括被后续记录覆盖的），文件头不匹配时返回 -1；末尾不完整的记录被忽略
+    private int loadIndex(Path indexPath) throws IOException {
+        if (!Files.exists(indexPath)) {
+            return -1;
+        }
+        try (InputStream fileInput = Files.newInputStream(indexPath);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileInput))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != thumbnailSize) {
+                return -1;
+            }
+            int recordCount = 0;
+            while (true) {
+                int slot;
+                long lastModified;
+                long length;
+                String path;
+                try {
+                    slot = in.readInt();
+                    lastModified = in.readLong();
+                    length = in.readLong();
+                    path = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                entries.put(path, new Entry(slot, lastModified, length));
+                nextSlot = Math.max(nextSlot, slot + 1);
+                recordCount++;
+            }
+            return recordCount;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    // 每个路径只保留最新的记录重写索引，先写临时文件再原子替换；槽位不变，图集无需改动
+    private void compactIndex(Path directory, Path indexPath) throws IOException {
+        Path temp = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+        try {
+            try (OutputStream fileOutput = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutput))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(thumbnailSize);
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    writeIndexRecord(out, e.getKey(), e.getValue().lastModified, e.getValue().length, e.getValue().slot);
+                }
+            }
+            try {
+                Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void appendIndexRecord(String path, long lastModified, long length, int slot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeIndexRecord(out, path, lastModified, length, slot);
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        while (record.hasRemaining()) {
+            indexChannel.write(record);
+        }
+    }
+
+    private static void writeIndexRecord(DataOutputStream out, String path, long lastModified, long length, int slot)
+            throws IOException {
+        out.writeInt(slot);
+        out.writeLong(lastModified);
+        out.writeLong(length);
+        out.writeUTF(path);
+    }
+
+    // 扩展图集映射，超出单个映射的上限时返回 false（之后的缩略图不再缓存）
+    private boolean grow() throws IOException {
+        long slots = Math.max((long) capacity * 2, (long) capacity + GROWTH_SLOTS);
+        slots = Math.min(slots, Integer.MAX_VALUE / slotBytes);
+        if (slots <= capacity) {
+            return false;
+        }
+        mapAtlas((int) slots);
+        return true;
+    }
+
+    private void mapAtlas(int slots) throws IOException {
+        capacity = Math.max(slots, GROWTH_SLOTS);
+        if (atlasChannel != null) {
+            atlas = atlasChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * slotBytes);
+            return;
+        }
+        // 只在内存中缓存时复制已有的槽位到更大的缓冲区
+        ByteBuffer grown = ByteBuffer.allocate(capacity * slotBytes);
+        if (atlas != null) {
+            grown.put(0, atlas, 0, atlas.capacity());
+        }
+        atlas = grown;
+    }
+
+    private static final class Entry {
+        final int slot;
+        final long lastModified;
+        final long length;
+
+        Entry(int slot, long lastModified, long length) {
+            this.slot = slot;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
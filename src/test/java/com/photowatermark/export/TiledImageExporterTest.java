@@ -0,0 +1,100 @@
+package com.photowatermark.export;
+
+import com.photowatermark.WatermarkTemplate;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledImageExporterTest {
+
+    private static final int WIDTH = 517;
+    private static final int HEIGHT = 389;
+    // 每条带只有16行，覆盖多条带以及最后一条不满的情况
+    private static final long BUDGET = 2L * 4 * WIDTH * 16;
+
+    private final WatermarkRenderer renderer = new WatermarkRenderer();
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource({"jpg, JPEG", "jpg, PNG", "png, PNG", "png, JPEG", "tif, PNG", "bmp, PNG"})
+    void stripsMatchWholeImageExport(String sourceFormat, String outputFormat) throws IOException {
+        File source = directory.resolve("source." + sourceFormat).toFile();
+        assertTrue(ImageIO.write(sampleImage(), sourceFormat.equals("jpg") ? "jpeg" : sourceFormat, source));
+        WatermarkSettings settings = settings();
+
+        File tiledOutput = directory.resolve("tiled." + outputFormat).toFile();
+        TiledImageExporter exporter = new TiledImageExporter(renderer, settings, outputFormat, 0.9f, BUDGET);
+        assertTrue(exporter.export(source, tiledOutput));
+
+        BufferedImage expected = renderer.render(ImageIO.read(source), settings);
+        BufferedImage actual = ImageIO.read(tiledOutput);
+        assertEquals(WIDTH, actual.getWidth());
+        assertEquals(HEIGHT, actual.getHeight());
+        // 解码器或编码器不同带来的误差，条带接缝处不应出现水印错位
+        double psnr = psnr(expected, actual);
+        assertTrue(psnr > 30, "PSNR " + psnr);
+    }
+
+    @Test
+    void smallImagesAreLeftToTheCaller() throws IOException {
+        File source = directory.resolve("source.png").toFile();
+        ImageIO.write(sampleImage(), "png", source);
+        TiledImageExporter exporter = new TiledImageExporter(renderer, settings(), "PNG", 0.9f, 64L * 1024 * 1024);
+        assertFalse(exporter.export(source, directory.resolve("out.png").toFile()));
+    }
+
+    private static BufferedImage sampleImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.ORANGE, WIDTH, HEIGHT, Color.DARK_GRAY));
+        g2d.fillRect(0, 0, WIDTH, HEIGHT);
+        g2d.setColor(Color.CYAN);
+        g2d.fillOval(40, 30, 200, 150);
+        g2d.dispose();
+        return image;
+    }
+
+    private static WatermarkSettings settings() {
+        WatermarkTemplate template = new WatermarkTemplate();
+        template.setWatermarkText("Tiled 分块");
+        template.setFontSize(60);
+        template.setTextColor(Color.WHITE);
+        template.setPosition("中心");
+        template.setHasShadow(true);
+        return WatermarkSettings.from(template);
+    }
+
+    private static double psnr(BufferedImage a, BufferedImage b) {
+        double sum = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int d = ((p >> shift) & 0xFF) - ((q >> shift) & 0xFF);
+                    sum += d * d;
+                }
+            }
+        }
+        double mse = sum / (3.0 * a.getWidth() * a.getHeight());
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+}
@@ -0,0 +1,227 @@
+package com.photowatermark.jpeg;
+
+import com.photowatermark.WatermarkTemplate;
+import com.photowatermark.render.WatermarkRenderer;
+import com.photowatermark.render.WatermarkSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class JpegRegionTranscoderTest {
+
+    // 宽高都不是MCU尺寸的整数倍，覆盖右侧和底部的补齐块
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 149;
+
+    private final WatermarkRenderer renderer = new WatermarkRenderer();
+
+    @ParameterizedTest(name = "4:2:0={0}, restart={1}")
+    @CsvSource({"true, 0", "false, 0", "true, 3", "false, 5"})
+    void unchangedWithoutUpdates(boolean subsampled, int restartInterval) throws IOException {
+        byte[] source = TestJpegs.encode(TestJpegs.sampleImage(WIDTH, HEIGHT), subsampled, restartInterval);
+
+        byte[] output = transcode(source, null);
+
+        assertEquals(restartInterval > 0, TestJpegs.containsRestartMarker(output));
+        assertPixelsEqual(TestJpegs.decode(source), TestJpegs.decode(output), null);
+    }
+
+    @ParameterizedTest(name = "4:2:0={0}, restart={1}")
+    @CsvSource({"true, 0", "false, 0", "true, 3", "false, 5"})
+    void blocksOutsideWatermarkDecodeIdentically(boolean subsampled, int restartInterval) throws IOException {
+        byte[] source = TestJpegs.encode(TestJpegs.sampleImage(WIDTH, HEIGHT), subsampled, restartInterval);
+        WatermarkSettings settings = settings("中心");
+        Rectangle bounds = renderer.getWatermarkBounds(WIDTH, HEIGHT, settings);
+
+        byte[] output = transcode(source, settings);
+        BufferedImage before = TestJpegs.decode(source);
+        BufferedImage after = TestJpegs.decode(output);
+
+        // 扩展到MCU边界；色度下采样时解码器插值会用到相邻MCU的色度，再留出一个MCU
+        int mcu = subsampled ? 16 : 8;
+        int margin = subsampled ? mcu : 0;
+        int x0 = Math.max(0, bounds.x / mcu * mcu - margin);
+        int y0 = Math.max(0, bounds.y / mcu * mcu - margin);
+        int x1 = Math.min(WIDTH, ((bounds.x + bounds.width + mcu - 1) / mcu) * mcu + margin);
+        int y1 = Math.min(HEIGHT, ((bounds.y + bounds.height + mcu - 1) / mcu) * mcu + margin);
+        Rectangle touched = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+
+        assertPixelsEqual(before, after, touched);
+        assertTrue(TestJpegs.psnr(before, after) < 60, "水印区域应当被修改");
+    }
+
+    @Test
+    void watermarkIsVisibleInOutput() throws IOException {
+        BufferedImage original = TestJpegs.sampleImage(WIDTH, HEIGHT);
+        byte[] source = TestJpegs.encode(original, true, 0);
+        WatermarkSettings settings = settings("左上角");
+
+        BufferedImage expected = renderer.render(TestJpegs.decode(source), settings);
+        BufferedImage actual = TestJpegs.decode(transcode(source, settings));
+
+        // 重新量化的块与直接绘制的结果相差在一次JPEG压缩的误差范围内
+        double psnr = TestJpegs.psnr(expected, actual);
+        double reference = TestJpegs.psnr(expected, TestJpegs.decode(TestJpegs.encode(expected, true, 0)));
+        assertTrue(psnr > reference - 1, "PSNR " + psnr + "，重新压缩整幅图片 " + reference);
+    }
+
+    @ParameterizedTest(name = "4:2:0={0}, restart={1}, rows={2}")
+    @CsvSource({"true, 0, 16", "false, 0, 8", "true, 4, 37", "false, 7, 1", "true, 0, 149"})
+    void stripDecoderMatchesImageIO(boolean subsampled, int restartInterval, int rowsPerStrip) throws IOException {
+        byte[] source = TestJpegs.encode(TestJpegs.sampleImage(WIDTH, HEIGHT), subsampled, restartInterval);
+        JpegRegionTranscoder transcoder = JpegRegionTranscoder.open(source);
+        assertNotNull(transcoder);
+
+        JpegRegionTranscoder.StripDecoder decoder = transcoder.stripDecoder();
+        BufferedImage decoded = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int top = 0; top < HEIGHT; top += rowsPerStrip) {
+            int rows = Math.min(rowsPerStrip, HEIGHT - top);
+            BufferedImage strip = decoder.readRows(rows);
+            assertEquals(WIDTH, strip.getWidth());
+            assertEquals(rows, strip.getHeight());
+            decoded.getGraphics().drawImage(strip, 0, top, null);
+        }
+        assertEquals(HEIGHT, decoder.getRowsRead());
+
+        // 浮点逆变换与 libjpeg 的整数实现只有舍入差异；色度按最近邻上采样，libjpeg 做插值，
+        // 4:2:0 时彩色边缘处差异较大，但与原图的误差不应明显大于 ImageIO
+        BufferedImage reference = TestJpegs.decode(source);
+        double psnr = TestJpegs.psnr(reference, decoded);
+        assertTrue(psnr > (subsampled ? 32 : 45), "PSNR " + psnr);
+        BufferedImage original = TestJpegs.sampleImage(WIDTH, HEIGHT);
+        double ours = TestJpegs.psnr(original, decoded);
+        double imageIO = TestJpegs.psnr(original, reference);
+        assertTrue(ours > imageIO - 1.5, "与原图的PSNR " + ours + "，ImageIO " + imageIO);
+    }
+
+    @Test
+    void stripDecoderRejectsRowsBeyondImage() throws IOException {
+        byte[] source = TestJpegs.encode(TestJpegs.sampleImage(WIDTH, HEIGHT), true, 0);
+        JpegRegionTranscoder.StripDecoder decoder = JpegRegionTranscoder.open(source).stripDecoder();
+        decoder.readRows(HEIGHT - 1);
+        assertThrows(IllegalArgumentException.class, () -> decoder.readRows(2));
+    }
+
+    @Test
+    void unsupportedTypesReturnNull() throws IOException {
+        BufferedImage image = TestJpegs.sampleImage(WIDTH, HEIGHT);
+        assertNull(JpegRegionTranscoder.open(TestJpegs.encodeProgressive(image)));
+
+        BufferedImage gray = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        gray.getGraphics().drawImage(image, 0, 0, null);
+        assertNull(JpegRegionTranscoder.open(TestJpegs.encode(gray, false, 0)));
+    }
+
+    @Test
+    void nonJpegInputIsRejected() {
+        assertThrows(IOException.class, () -> JpegRegionTranscoder.open(new byte[0]));
+        assertThrows(IOException.class, () -> JpegRegionTranscoder.open("not a jpeg".getBytes()));
+    }
+
+    @ParameterizedTest(name = "4:2:0={0}, restart={1}")
+    @CsvSource({"true, 0", "false, 4"})
+    void truncatedInputFailsWithIOException(boolean subsampled, int restartInterval) throws IOException {
+        byte[] source = TestJpegs.encode(TestJpegs.sampleImage(WIDTH, HEIGHT), subsampled, restartInterval);
+        WatermarkSettings settings = settings("中心");
+        for (int length = 0; length < source.length; length += Math.max(1, length / 8)) {
+            assertOnlyIOException(Arrays.copyOf(source, length), settings);
+        }
+    }
+
+    @ParameterizedTest(name = "4:2:0={0}, restart={1}")
+    @CsvSource({"true, 0", "false, 4"})
+    void corruptInputFailsWithIOException(boolean subsampled, int restartInterval) throws IOException {
+        byte[] source = TestJpegs.encode(TestJpegs.sampleImage(WIDTH, HEIGHT), subsampled, restartInterval);
+        WatermarkSettings settings = settings("中心");
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            byte[] corrupt = source.clone();
+            int count = 1 + random.nextInt(4);
+            for (int k = 0; k < count; k++) {
+                corrupt[2 + random.nextInt(corrupt.length - 2)] = (byte) random.nextInt(256);
+            }
+            assertOnlyIOException(corrupt, settings);
+        }
+    }
+
+    // 局部重编码一次，settings 为 null 时不修改任何块
+    private byte[] transcode(byte[] source, WatermarkSettings settings) throws IOException {
+        JpegRegionTranscoder transcoder = JpegRegionTranscoder.open(source);
+        assertNotNull(transcoder, "应支持该JPEG");
+        if (settings != null) {
+            int width = transcoder.getWidth();
+            int height = transcoder.getHeight();
+            transcoder.updateRegion(renderer.getWatermarkBounds(width, height, settings),
+                g2d -> renderer.paint(g2d, width, height, settings));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transcoder.writeTo(out);
+        return out.toByteArray();
+    }
+
+    // 损坏的数据可以被解码出错误的像素，但除 IOException 外不应抛出其他异常
+    private void assertOnlyIOException(byte[] data, WatermarkSettings settings) {
+        try {
+            JpegRegionTranscoder transcoder = JpegRegionTranscoder.open(data);
+            if (transcoder == null) {
+                return;
+            }
+            int width = transcoder.getWidth();
+            int height = transcoder.getHeight();
+            transcoder.updateRegion(renderer.getWatermarkBounds(width, height, settings),
+                g2d -> renderer.paint(g2d, width, height, settings));
+            transcoder.writeTo(new ByteArrayOutputStream());
+
+            JpegRegionTranscoder.StripDecoder decoder = JpegRegionTranscoder.open(data).stripDecoder();
+            for (int top = 0; top < height; top += 16) {
+                decoder.readRows(Math.min(16, height - top));
+            }
+        } catch (IOException e) {
+            // 预期的失败方式
+        } catch (RuntimeException e) {
+            fail("损坏的数据应抛出 IOException，实际为 " + e, e);
+        }
+    }
+
+    private static WatermarkSettings settings(String position) {
+        WatermarkTemplate template = new WatermarkTemplate();
+        template.setWatermarkText("水印 Watermark");
+        template.setFontSize(28);
+        template.setTextColor(Color.YELLOW);
+        template.setPosition(position);
+        template.setTransparency(30);
+        return WatermarkSettings.from(template);
+    }
+
+    // 比较两幅图片，excluded 以内的像素不比较
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual, Rectangle excluded) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (excluded != null && excluded.contains(x, y)) {
+                    continue;
+                }
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    fail("像素 (" + x + ", " + y + ") 不一致: "
+                        + Integer.toHexString(expected.getRGB(x, y)) + " != " + Integer.toHexString(actual.getRGB(x, y)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.photowatermark.jpeg;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JpegStripEncoderTest {
+
+    @ParameterizedTest(name = "{0}x{1}, rows={2}")
+    @CsvSource({"203, 149, 16", "64, 64, 64", "1, 1, 16", "17, 35, 32"})
+    void encodedStripsDecodeCloseToSource(int width, int height, int rowsPerStrip) throws IOException {
+        BufferedImage image = TestJpegs.sampleImage(width, height);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegStripEncoder encoder = new JpegStripEncoder(out, width, height, 0.9f);
+        for (int top = 0; top < height; top += rowsPerStrip) {
+            encoder.writeStrip(image.getSubimage(0, top, width, Math.min(rowsPerStrip, height - top)));
+        }
+        encoder.finish();
+
+        BufferedImage decoded = TestJpegs.decode(out.toByteArray());
+        assertEquals(width, decoded.getWidth());
+        assertEquals(height, decoded.getHeight());
+        // 与 ImageIO 以相同质量和 4:2:0 采样编码的结果相比，失真不应明显更大
+        double psnr = TestJpegs.psnr(image, decoded);
+        double reference = TestJpegs.psnr(image, TestJpegs.decode(TestJpegs.encode(image, true, 0)));
+        assertTrue(psnr > reference - 1, "PSNR " + psnr + "，ImageIO " + reference);
+    }
+
+    @Test
+    void rejectsMisalignedStrips() throws IOException {
+        BufferedImage image = TestJpegs.sampleImage(32, 48);
+        JpegStripEncoder encoder = new JpegStripEncoder(new ByteArrayOutputStream(), 32, 48, 0.9f);
+        encoder.writeStrip(image.getSubimage(0, 0, 32, 10));
+        assertThrows(IllegalStateException.class, () -> encoder.writeStrip(image.getSubimage(0, 10, 32, 16)));
+    }
+
+    @Test
+    void rejectsUnfinishedImage() throws IOException {
+        BufferedImage image = TestJpegs.sampleImage(32, 48);
+        JpegStripEncoder encoder = new JpegStripEncoder(new ByteArrayOutputStream(), 32, 48, 0.9f);
+        encoder.writeStrip(image.getSubimage(0, 0, 32, 16));
+        assertThrows(IllegalStateException.class, encoder::finish);
+        assertThrows(IllegalArgumentException.class, () -> encoder.writeStrip(image.getSubimage(0, 0, 31, 16)));
+    }
+
+    @Test
+    void rejectsUnsupportedDimensions() {
+        assertThrows(IOException.class, () -> new JpegStripEncoder(new ByteArrayOutputStream(), 0, 10, 0.9f));
+        assertThrows(IOException.class, () -> new JpegStripEncoder(new ByteArrayOutputStream(), 70000, 10, 0.9f));
+    }
+}
@@ -0,0 +1,164 @@
+package com.photowatermark.jpeg;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * 测试用的JPEG样本与比较工具
+ */
+final class TestJpegs {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    private TestJpegs() {
+    }
+
+    /**
+     * 类似照片的样本图片：渐变、色块、文字，加上亮度噪点使每个块都有交流分量
+     */
+    static BufferedImage sampleImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(13) - 6;
+                int r = clamp(x * 255 / width + noise);
+                int g = clamp(y * 255 / height + noise);
+                int b = clamp(255 - (x + y) * 255 / (width + height) + noise);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(Color.RED);
+        g2d.fillOval(width / 8, height / 8, width / 3, height / 3);
+        g2d.setColor(Color.BLUE);
+        g2d.fillRect(width / 2, height / 2, width / 4, height / 5);
+        g2d.setColor(Color.WHITE);
+        g2d.drawString("JPEG test 测试", width / 5, height * 3 / 4);
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * 用 ImageIO 编码为基线JPEG
+     * subsampled 为 true 时亮度 2x2、色度 1x1（4:2:0），否则三个分量都是 1x1（4:4:4）；
+     * restartInterval 大于0时每隔这么多个MCU插入重启标记
+     */
+    static byte[] encode(BufferedImage image, boolean subsampled, int restartInterval) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.9f);
+            IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+            Element markerSequence = (Element) root.getElementsByTagName("markerSequence").item(0);
+
+            NodeList components = markerSequence.getElementsByTagName("componentSpec");
+            for (int i = 0; i < components.getLength(); i++) {
+                Element component = (Element) components.item(i);
+                int factor = subsampled && i == 0 ? 2 : 1;
+                component.setAttribute("HsamplingFactor", Integer.toString(factor));
+                component.setAttribute("VsamplingFactor", Integer.toString(factor));
+            }
+            if (restartInterval > 0) {
+                IIOMetadataNode dri = new IIOMetadataNode("dri");
+                dri.setAttribute("interval", Integer.toString(restartInterval));
+                Node sof = markerSequence.getElementsByTagName("sof").item(0);
+                markerSequence.insertBefore(dri, sof);
+            }
+            metadata.setFromTree(JPEG_METADATA_FORMAT, root);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, metadata), param);
+            }
+            return bytes.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 用 ImageIO 编码为渐进式JPEG
+     */
+    static byte[] encodeProgressive(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            return bytes.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        if (image == null) {
+            throw new IOException("ImageIO 无法解码");
+        }
+        return image;
+    }
+
+    /**
+     * 两幅同尺寸图片RGB通道的峰值信噪比（dB），完全相同时返回正无穷
+     */
+    static double psnr(BufferedImage a, BufferedImage b) {
+        double sum = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int d = ((p >> shift) & 0xFF) - ((q >> shift) & 0xFF);
+                    sum += d * d;
+                }
+            }
+        }
+        double mse = sum / (3.0 * a.getWidth() * a.getHeight());
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    /**
+     * 是否含有重启标记 RST0-RST7
+     */
+    static boolean containsRestartMarker(byte[] jpeg) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            int next = jpeg[i + 1] & 0xFF;
+            if ((jpeg[i] & 0xFF) == 0xFF && next >= 0xD0 && next <= 0xD7) {
+                return true;
+            }
+        }
+        return false;
+    }
+}